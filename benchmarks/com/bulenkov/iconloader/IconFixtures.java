@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates icon sets and jars used by the benchmarks, so they don't depend on bundled resources.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class IconFixtures {
+  private IconFixtures() {
+  }
+
+  public static File createTempDir() throws IOException {
+    File dir = File.createTempFile("iconloader-bench", "");
+    if (!dir.delete() || !dir.mkdirs()) throw new IOException("Can't create " + dir);
+    return dir;
+  }
+
+  /**
+   * Writes {@code name.png} with its {@code @2x}, {@code _dark} and {@code @2x_dark} variants.
+   *
+   * @return URL of the base icon
+   */
+  public static URL createIconSet(File dir, String name, int size) throws IOException {
+    writePng(createImage(size, false), new File(dir, name + ".png"));
+    writePng(createImage(2 * size, false), new File(dir, name + "@2x.png"));
+    writePng(createImage(size, true), new File(dir, name + "_dark.png"));
+    writePng(createImage(2 * size, true), new File(dir, name + "@2x_dark.png"));
+    return new File(dir, name + ".png").toURI().toURL();
+  }
+
+  /**
+   * Writes a jar with {@code count} icons named {@code icons/icon<i>.png}.
+   */
+  public static File createJar(File dir, int count, int size) throws IOException {
+    File jar = new File(dir, "icons.jar");
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      for (int i = 0; i < count; i++) {
+        out.putNextEntry(new JarEntry("icons/icon" + i + ".png"));
+        ImageIO.write(createImage(size, (i & 1) == 1), "png", out);
+        out.closeEntry();
+      }
+    }
+    finally {
+      out.close();
+    }
+    return jar;
+  }
+
+  public static BufferedImage createImage(int size, boolean dark) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setColor(dark ? new Color(0xAFB1B3) : new Color(0x389FD6));
+    g.fillOval(1, 1, size - 2, size - 2);
+    g.setColor(dark ? Color.DARK_GRAY : Color.WHITE);
+    g.fillRect(size / 4, size / 4, size / 2, size / 2);
+    g.dispose();
+    return image;
+  }
+
+  private static void writePng(BufferedImage image, File file) throws IOException {
+    if (!ImageIO.write(image, "png", file)) throw new IOException("No PNG writer for " + file);
+  }
+
+  public static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+}
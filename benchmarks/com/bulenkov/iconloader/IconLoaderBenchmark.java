@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.JBImageIcon;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class IconLoaderBenchmark {
+  private File myDir;
+  private URL myUrl;
+  private Icon myIcon;
+  private Icon myCachedDisabledSource;
+  private BufferedImage myTarget;
+  private Graphics2D myGraphics;
+  private BufferedImage myRaster;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    myDir = IconFixtures.createTempDir();
+    myUrl = IconFixtures.createIconSet(myDir, "action", 16);
+    myIcon = IconLoader.findIcon(myUrl);
+    myIcon.getIconWidth();
+    myRaster = IconFixtures.createImage(16, false);
+    myCachedDisabledSource = new JBImageIcon(myRaster);
+    IconLoader.getDisabledIcon(myCachedDisabledSource);
+
+    //noinspection UndesirableClassUsage
+    myTarget = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+    myGraphics = myTarget.createGraphics();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    myGraphics.dispose();
+    IconFixtures.delete(myDir);
+  }
+
+  @Benchmark
+  public Icon findIconCacheHit() {
+    return IconLoader.findIcon(myUrl);
+  }
+
+  @Benchmark
+  public int findIconCacheMiss(ColdCache cache) {
+    return IconLoader.findIcon(myUrl).getIconWidth();
+  }
+
+  @Benchmark
+  public BufferedImage paintIcon() {
+    myIcon.paintIcon(null, myGraphics, 8, 8);
+    return myTarget;
+  }
+
+  @Benchmark
+  public Icon getDisabledIconCacheHit() {
+    return IconLoader.getDisabledIcon(myCachedDisabledSource);
+  }
+
+  @Benchmark
+  public Icon getDisabledIconCacheMiss() {
+    return IconLoader.getDisabledIcon(new JBImageIcon(myRaster));
+  }
+
+  /**
+   * Empties the icon caches before every invocation, so the icon is created and loaded again.
+   */
+  @State(Scope.Thread)
+  public static class ColdCache {
+    @Setup(Level.Invocation)
+    public void clear() {
+      IconLoader.setUseDarkIcons(false);
+    }
+  }
+}
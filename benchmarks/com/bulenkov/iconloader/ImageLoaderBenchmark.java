@@ -0,0 +1,73 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ImageLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a generated icon set for every dark/retina variant combination.
+ *
+ * @author Konstantin Bulenkov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageLoaderBenchmark {
+  @Param({"false", "true"})
+  public boolean dark;
+
+  @Param({"false", "true"})
+  public boolean retina;
+
+  @Param({"false", "true"})
+  public boolean variantsAvailable;
+
+  private File myDir;
+  private URL myUrl;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    myDir = IconFixtures.createTempDir();
+    myUrl = IconFixtures.createIconSet(myDir, "action", 16);
+    if (!variantsAvailable) {
+      // only the base icon is left, all variant probes fail
+      for (String suffix : new String[]{"@2x", "_dark", "@2x_dark"}) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(myDir, "action" + suffix + ".png").delete();
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    IconFixtures.delete(myDir);
+  }
+
+  @Benchmark
+  public Image loadFromUrl() {
+    return ImageLoader.loadFromUrl(myUrl, dark, retina);
+  }
+}
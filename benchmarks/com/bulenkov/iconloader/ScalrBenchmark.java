@@ -0,0 +1,55 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.Scalr;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scales a 2x icon to 1.5x, the way icons are scaled for fractional UI scales.
+ *
+ * @author Konstantin Bulenkov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScalrBenchmark {
+  @Param({"AUTOMATIC", "SPEED", "BALANCED", "QUALITY", "ULTRA_QUALITY"})
+  public Scalr.Method method;
+
+  @Param({"16", "32"})
+  public int size;
+
+  private BufferedImage mySource;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mySource = IconFixtures.createImage(2 * size, false);
+  }
+
+  @Benchmark
+  public BufferedImage resize() {
+    int target = size * 3 / 2;
+    return Scalr.resize(mySource, method, target, target);
+  }
+}
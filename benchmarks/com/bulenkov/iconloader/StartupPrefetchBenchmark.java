@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+/**
+ * Measures the time to the first painted frame of a toolbar-like set of icons, starting a fresh JVM per session:
+ * a cold session which records the icons it loads, then a session which replays that recording during a simulated
+ * splash screen. Run with {@code ant benchmark.startup}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class StartupPrefetchBenchmark {
+  private static final int ICONS = 300;
+  private static final int SPLASH_MILLIS = 500;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 2) {
+      session(new File(args[0]), new File(args[1]));
+      return;
+    }
+    File icons = createIcons();
+    File recording = new File(icons, "startup.prefetch");
+    System.out.println("Cold start:    " + runSession(icons, recording));
+    System.out.println("With prefetch: " + runSession(icons, recording));
+  }
+
+  private static String runSession(File icons, File recording) throws Exception {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    Process process = new ProcessBuilder(java, "-Djava.awt.headless=true", "-Dicons.prefetch.record.seconds=60",
+                                         "-cp", System.getProperty("java.class.path"),
+                                         StartupPrefetchBenchmark.class.getName(), icons.getPath(), recording.getPath())
+      .redirectErrorStream(true).start();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String result = reader.readLine();
+    process.waitFor();
+    return result;
+  }
+
+  private static void session(File icons, File recording) throws Exception {
+    IconPrefetcher.start(recording);
+    // the splash screen: the application initializes while the prefetcher loads icons
+    Thread.sleep(SPLASH_MILLIS);
+
+    long start = System.nanoTime();
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage frame = new BufferedImage(ICONS * 16, 16, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = frame.createGraphics();
+    for (int i = 0; i < ICONS; i++) {
+      Icon icon = IconLoader.findIcon(new File(icons, "icon" + i + ".png").toURI().toURL());
+      icon.paintIcon(null, g, i * 16, 0);
+    }
+    g.dispose();
+    long frameMillis = (System.nanoTime() - start) / 1000000;
+    IconPrefetcher.stopRecording(recording);
+    IconLoaderStats stats = IconLoaderStats.getInstance();
+    System.out.println("first icon painted at " + stats.getTimeToFirstIconPaintMillis() + " ms, first frame took " + frameMillis +
+                       " ms after the splash, " + stats.getPrefetchedIcons() + " icons prefetched");
+  }
+
+  private static File createIcons() throws Exception {
+    File dir = File.createTempFile("prefetch", "");
+    if (!dir.delete() || !dir.mkdirs()) throw new IllegalStateException("Can't create " + dir);
+    Random random = new Random(1);
+    for (int i = 0; i < ICONS; i++) {
+      @SuppressWarnings("UndesirableClassUsage")
+      BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+      for (int y = 0; y < 16; y++) {
+        for (int x = 0; x < 16; x++) {
+          image.setRGB(x, y, random.nextInt());
+        }
+      }
+      ImageIO.write(image, "png", new File(dir, "icon" + i + ".png"));
+    }
+    return dir;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.URLUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens and reads an entry of a large generated icon jar through {@link URLUtil#openStream(URL)}.
+ *
+ * @author Konstantin Bulenkov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class URLUtilBenchmark {
+  private static final int ENTRIES = 20000;
+
+  private File myDir;
+  private URL myUrl;
+  private final byte[] myBuffer = new byte[8192];
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    myDir = IconFixtures.createTempDir();
+    File jar = IconFixtures.createJar(myDir, ENTRIES, 16);
+    myUrl = new URL("jar:" + jar.toURI().toURL() + "!/icons/icon" + (ENTRIES - 1) + ".png");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    IconFixtures.delete(myDir);
+  }
+
+  @Benchmark
+  public int openStream() throws IOException {
+    InputStream stream = URLUtil.openStream(myUrl);
+    try {
+      int total = 0;
+      int n;
+      while ((n = stream.read(myBuffer)) > 0) {
+        total += n;
+      }
+      return total;
+    }
+    finally {
+      stream.close();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.BufferExposingByteArrayOutputStream;
+import com.bulenkov.iconloader.util.ConcurrencyUtil;
+import com.bulenkov.iconloader.util.Scalr;
+import com.bulenkov.iconloader.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RGBImageFilter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Renders icons to PNG bytes without a display, for build and web servers.
+ * <p/>
+ * Unlike {@link IconLoader}, it never touches {@code UIManager}, {@code Toolkit} or Swing components:
+ * icons are decoded with ImageIO, scaled with {@link Scalr}, filtered and encoded on plain rasters.
+ * Variants are chosen the same way {@link IconLoader} does: {@code _dark} variants when {@code dark} is set
+ * and {@code @2x} variants for scales above 1.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class HeadlessIconRenderer implements Closeable {
+  private final ClassLoader myClassLoader;
+  private final ExecutorService myExecutor;
+  private final boolean myOwnsExecutor;
+
+  /**
+   * Creates a renderer which uses a daemon thread per available processor, {@link #close()} stops them.
+   */
+  public HeadlessIconRenderer(@NotNull ClassLoader classLoader) {
+    this(classLoader, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                   ConcurrencyUtil.newNamedThreadFactory("Headless Icon Renderer", true, Thread.NORM_PRIORITY)),
+         true);
+  }
+
+  /**
+   * Creates a renderer which runs batches on {@code executor}, the executor is left running by {@link #close()}.
+   */
+  public HeadlessIconRenderer(@NotNull ClassLoader classLoader, @NotNull ExecutorService executor) {
+    this(classLoader, executor, false);
+  }
+
+  private HeadlessIconRenderer(@NotNull ClassLoader classLoader, @NotNull ExecutorService executor, boolean ownsExecutor) {
+    myClassLoader = classLoader;
+    myExecutor = executor;
+    myOwnsExecutor = ownsExecutor;
+  }
+
+  /**
+   * Stops the threads created by this renderer, batches can't be rendered afterwards.
+   */
+  @Override
+  public void close() {
+    if (myOwnsExecutor) {
+      myExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Renders all icons in parallel.
+   *
+   * @param paths  resource paths like {@code /icons/print.png}
+   * @param scale  the target scale, {@code 1} for the icon's own size
+   * @param dark   whether dark variants should be preferred
+   * @param filter an optional filter applied to every pixel
+   * @return PNG bytes for each path in the order of {@code paths}, {@code null} for icons which cannot be found or decoded
+   */
+  @NotNull
+  public Map<String, byte[]> render(@NotNull Collection<String> paths, final float scale, final boolean dark, @Nullable final RGBImageFilter filter) {
+    List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(paths.size());
+    for (final String path : paths) {
+      tasks.add(new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+          try {
+            return render(path, scale, dark, filter);
+          }
+          catch (IOException e) {
+            return null;
+          }
+        }
+      });
+    }
+
+    List<Future<byte[]>> futures;
+    try {
+      futures = ConcurrencyUtil.invokeAll(tasks, myExecutor);
+    }
+    catch (Throwable e) {
+      throw new IllegalStateException("Can't render icons", e);
+    }
+
+    Map<String, byte[]> result = new LinkedHashMap<String, byte[]>(paths.size());
+    Iterator<Future<byte[]>> iterator = futures.iterator();
+    for (String path : paths) {
+      try {
+        result.put(path, iterator.next().get());
+      }
+      catch (Exception e) {
+        result.put(path, null);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Renders a single icon in the calling thread.
+   *
+   * @return PNG bytes or {@code null} if the icon cannot be found or decoded
+   */
+  @Nullable
+  public byte[] render(@NotNull String path, float scale, boolean dark, @Nullable RGBImageFilter filter) throws IOException {
+    BufferedImage image = null;
+    int variantScale = 1;
+    for (String variant : getVariants(path, dark, scale > 1f)) {
+      image = read(variant);
+      if (image != null) {
+        variantScale = variant.contains("@2x") ? 2 : 1;
+        break;
+      }
+    }
+    if (image == null) return null;
+
+    int width = Math.max(1, Math.round(image.getWidth() * scale / variantScale));
+    int height = Math.max(1, Math.round(image.getHeight() * scale / variantScale));
+    if (width != image.getWidth() || height != image.getHeight()) {
+      image = Scalr.resize(image, Scalr.Method.QUALITY, Scalr.Mode.FIT_EXACT, width, height);
+    }
+
+    image = toIntArgb(image);
+    if (filter != null) {
+      int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int i = y * width + x;
+          pixels[i] = filter.filterRGB(x, y, pixels[i]);
+        }
+      }
+    }
+
+    BufferExposingByteArrayOutputStream out = new BufferExposingByteArrayOutputStream();
+    MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+    try {
+      if (!ImageIO.write(image, "png", stream)) throw new IOException("No PNG writer available");
+    }
+    finally {
+      stream.close();
+    }
+    return out.toByteArray();
+  }
+
+  @NotNull
+  private static List<String> getVariants(@NotNull String path, boolean dark, boolean retina) {
+    String name = StringUtil.getFileNameWithoutExtension(path);
+    String ext = StringUtil.getFileExtension(path);
+    List<String> variants = new ArrayList<String>(4);
+    if (dark && retina) variants.add(name + "@2x_dark." + ext);
+    if (dark) variants.add(name + "_dark." + ext);
+    if (retina) variants.add(name + "@2x." + ext);
+    variants.add(path);
+    return variants;
+  }
+
+  @Nullable
+  private BufferedImage read(@NotNull String path) throws IOException {
+    InputStream stream = myClassLoader.getResourceAsStream(StringUtil.startsWithChar(path, '/') ? path.substring(1) : path);
+    if (stream == null) return null;
+    try {
+      // memory cache instead of ImageIO's default temp file cache
+      return ImageIO.read(new MemoryCacheImageInputStream(stream));
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  @NotNull
+  private static BufferedImage toIntArgb(@NotNull BufferedImage image) {
+    if (image.getType() == BufferedImage.TYPE_INT_ARGB) return image;
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = result.createGraphics();
+    g.drawImage(image, 0, 0, null);
+    g.dispose();
+    return result;
+  }
+}
@@ -16,7 +16,10 @@
 
 package com.bulenkov.iconloader;
 
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.IconLoaderStats.Phase;
 import com.bulenkov.iconloader.util.*;
+import com.bulenkov.iconloader.util.IconEvents.IconEvent;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -26,6 +29,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageFilter;
 import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.*;
@@ -33,6 +37,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Konstantin Bulenkov
@@ -45,11 +50,26 @@ public final class IconLoader {
   @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
   private static final ConcurrentMap<URL, CachedImageIcon> ourIconsCache = new ConcurrentHashMap<URL, CachedImageIcon>(100, 0.9f, 2);
 
+  private static final ConcurrentMap<DataUri, Icon> ourDataUriIcons = new ConcurrentSoftValueHashMap<DataUri, Icon>();
+
   /**
    * This cache contains mapping between icons and disabled icons.
    */
   private static final Map<Icon, Icon> ourIcon2DisabledIcon = new WeakHashMap<Icon, Icon>(200);
 
+  /**
+   * Transparent variants of static icons, rendered once per alpha and scale.
+   */
+  private static final Map<Icon, List<Blended>> ourTransparentIcons = new WeakHashMap<Icon, List<Blended>>();
+  private static volatile boolean PREBLEND_TRANSPARENT_ICONS = Registry.is("icons.preblend.transparent");
+
+  /**
+   * Original and scaled images of {@link CachedImageIcon}s by the URL they're loaded from. The most recently used
+   * ones survive a full GC.
+   */
+  private static final SoftLRUCache<ScaledKey, Image> ourOrigImages = new SoftLRUCache<ScaledKey, Image>();
+  private static final SoftLRUCache<ScaledKey, Icon> ourScaledIcons = new SoftLRUCache<ScaledKey, Icon>();
+
   private static float SCALE = JBUI.scale(1f);
   private static ImageFilter IMAGE_FILTER;
 
@@ -62,6 +82,12 @@ public final class IconLoader {
 
   private static AtomicBoolean ourIsActivated = new AtomicBoolean(true);
   private static AtomicBoolean ourIsSaveRealIconPath = new AtomicBoolean(false);
+  private static final AtomicInteger ourGeneration = new AtomicInteger();
+  // incremented whenever an icon may resolve to another image without a generation change, see getIconStamp()
+  private static final AtomicInteger ourLoadCount = new AtomicInteger();
+
+  private static final List<IconPathPatcher> ourPatchers = new ArrayList<IconPathPatcher>(2);
+  private static volatile IconPathTable ourPathTable = IconPathTable.EMPTY;
   public static final Component ourComponent = new Component() {};
 
   private IconLoader() { }
@@ -76,6 +102,19 @@ public final class IconLoader {
     clearCache();
   }
 
+  /**
+   * Paints transparent icons of {@link #getTransparentIcon(Icon, float)} from rasters blended once
+   * instead of through an alpha composite on every paint.
+   */
+  public static void setPreblendTransparentIcons(boolean preblend) {
+    PREBLEND_TRANSPARENT_ICONS = preblend;
+    if (!preblend) {
+      synchronized (ourTransparentIcons) {
+        ourTransparentIcons.clear();
+      }
+    }
+  }
+
   public static void setScale(float scale) {
     if (scale != SCALE) {
       SCALE = scale;
@@ -94,8 +133,44 @@ public final class IconLoader {
   }
 
   private static void clearCache() {
+    IconLoaderStats.add(Counter.EVICTION, ourIconsCache.size() + ourIcon2DisabledIcon.size());
     ourIconsCache.clear();
     ourIcon2DisabledIcon.clear();
+    ourDataUriIcons.clear();
+    ourOrigImages.clear();
+    ourScaledIcons.clear();
+    ourGeneration.incrementAndGet();
+  }
+
+  /**
+   * Incremented whenever loaded icons may start to look different: dark icons, scale or filter were changed.
+   */
+  public static int getGeneration() {
+    return ourGeneration.get();
+  }
+
+  /**
+   * Changes whenever {@link #getIconSnapshot(Icon)} of some icon may start to return another icon: an icon was
+   * (re)loaded or recomputed, path patchers or {@link #getGeneration()} changed, or the loader was activated
+   * or disabled. Cheap enough to check on every paint, so snapshots are only taken when it changes.
+   */
+  public static int getIconStamp() {
+    // every component only grows, so does the sum
+    return ourLoadCount.get() + ourPathTable.getGeneration() + ourGeneration.get();
+  }
+
+  public static void installPathPatcher(@NotNull IconPathPatcher patcher) {
+    synchronized (ourPatchers) {
+      ourPatchers.add(patcher);
+      ourPathTable = IconPathTable.compile(ourPatchers, ourPathTable.getGeneration() + 1);
+    }
+  }
+
+  public static void removePathPatcher(@NotNull IconPathPatcher patcher) {
+    synchronized (ourPatchers) {
+      if (!ourPatchers.remove(patcher)) return;
+      ourPathTable = IconPathTable.compile(ourPatchers, ourPathTable.getGeneration() + 1);
+    }
   }
 
   //TODO[kb] support iconsets
@@ -147,10 +222,12 @@ public final class IconLoader {
 
   public static void activate() {
     ourIsActivated.set(true);
+    ourLoadCount.incrementAndGet();
   }
 
   public static void disable() {
     ourIsActivated.set(false);
+    ourLoadCount.incrementAndGet();
   }
 
   public static boolean isLoaderDisabled() {
@@ -180,31 +257,62 @@ public final class IconLoader {
 
   @Nullable
   public static Icon findIcon(@NotNull String path, @NotNull final Class aClass, boolean computeNow, boolean strict) {
+    if (URLUtil.isDataUri(path)) return findDataUriIcon(path);
     String originalPath = path;
-    path = patchPath(path);
-    if (isReflectivePath(path)) return getReflectiveIcon(path, aClass.getClassLoader());
+    IconPathTable table = ourPathTable;
+    ClassLoader classLoader = aClass.getClassLoader();
+    Pair<String, ClassLoader> patched = patchPath(table, path, classLoader);
+    ClassLoader loader = classLoader;
+    if (patched != null) {
+      path = patched.first;
+      if (patched.second != null) loader = patched.second;
+    }
+    if (isReflectivePath(path)) return getReflectiveIcon(path, loader);
 
-    URL myURL = aClass.getResource(path);
+    // the icon is cached under its own URL and loads the patched one itself, see CachedImageIcon.repatch()
+    URL myURL = aClass.getResource(originalPath);
+    if (myURL == null && patched != null) {
+      // exists only as a replacement
+      myURL = loader != classLoader && StringUtil.startsWithChar(path, '/') ? loader.getResource(path.substring(1)) : aClass.getResource(path);
+    }
     if (myURL == null) {
       if (strict) throw new RuntimeException("Can't find icon in '" + path + "' near " + aClass);
       return null;
     }
     final Icon icon = findIcon(myURL);
     if (icon instanceof CachedImageIcon) {
-      ((CachedImageIcon)icon).myOriginalPath = originalPath;
-      ((CachedImageIcon)icon).myClassLoader = aClass.getClassLoader();
+      ((CachedImageIcon)icon).setOriginalPath(originalPath, classLoader);
     }
     return icon;
   }
 
-  private static String patchPath(@NotNull String path) {
-//    for (IconPathPatcher patcher : ourPatchers) {
-//      String newPath = patcher.patchPath(path);
-//      if (newPath != null) {
-//        path = newPath;
-//      }
-//    }
-    return path;
+  /**
+   * @return the patched path and the class loader to load it from, or {@code null} if the path isn't patched
+   */
+  @Nullable
+  private static Pair<String, ClassLoader> patchPath(@NotNull IconPathTable table, @NotNull String path, @Nullable ClassLoader classLoader) {
+    Pair<String, IconPathPatcher> patched = table.isEmpty() ? null : table.lookup(path);
+    if (patched == null) return null;
+    return Pair.create(patched.first, patched.second.getContextClassLoader(patched.first, classLoader));
+  }
+
+  /**
+   * Icons embedded as {@code data:} URIs are cached by their decoded content, so differently wrapped
+   * or quoted copies of the same image share one icon.
+   */
+  @Nullable
+  private static Icon findDataUriIcon(@NotNull String path) {
+    DataUri uri = DataUri.parse(path);
+    if (uri == null) return null;
+    Icon icon = ourDataUriIcons.get(uri);
+    if (icon != null) {
+      IconLoaderStats.increment(Counter.ICON_CACHE_HIT);
+      return icon;
+    }
+    IconLoaderStats.increment(Counter.ICON_CACHE_MISS);
+    Image image = ImageLoader.loadFromDataUri(uri);
+    if (image == null) return null;
+    return ConcurrencyUtil.cacheOrGet(ourDataUriIcons, uri, new JBImageIcon(image));
   }
 
   private static boolean isReflectivePath(@NotNull String path) {
@@ -224,26 +332,39 @@ public final class IconLoader {
     }
     CachedImageIcon icon = ourIconsCache.get(url);
     if (icon == null) {
+      IconLoaderStats.increment(Counter.ICON_CACHE_MISS);
       icon = new CachedImageIcon(url);
       if (useCache) {
         icon = ConcurrencyUtil.cacheOrGet(ourIconsCache, url, icon);
       }
     }
+    else {
+      IconLoaderStats.increment(Counter.ICON_CACHE_HIT);
+    }
     return icon;
   }
 
   @Nullable
   public static Icon findIcon(@NotNull String path, @NotNull ClassLoader classLoader) {
+    if (URLUtil.isDataUri(path)) return findDataUriIcon(path);
     String originalPath = path;
-    path = patchPath(path);
-    if (isReflectivePath(path)) return getReflectiveIcon(path, classLoader);
+    IconPathTable table = ourPathTable;
+    Pair<String, ClassLoader> patched = patchPath(table, path, classLoader);
+    ClassLoader loader = classLoader;
+    if (patched != null) {
+      path = patched.first;
+      if (patched.second != null) loader = patched.second;
+    }
+    if (isReflectivePath(path)) return getReflectiveIcon(path, loader);
     if (!StringUtil.startsWithChar(path, '/')) return null;
 
-    final URL url = classLoader.getResource(path.substring(1));
+    URL url = StringUtil.startsWithChar(originalPath, '/') ? classLoader.getResource(originalPath.substring(1)) : null;
+    if (url == null) {
+      url = loader.getResource(path.substring(1));
+    }
     final Icon icon = findIcon(url);
     if (icon instanceof CachedImageIcon) {
-      ((CachedImageIcon)icon).myOriginalPath = originalPath;
-      ((CachedImageIcon)icon).myClassLoader = classLoader;
+      ((CachedImageIcon)icon).setOriginalPath(originalPath, classLoader);
     }
     return icon;
   }
@@ -275,12 +396,16 @@ public final class IconLoader {
   public static Icon getDisabledIcon(Icon icon) {
     if (icon instanceof LazyIcon) icon = ((LazyIcon)icon).getOrComputeIcon();
     if (icon == null) return null;
+    // pixel-identical icons share their real icon, so they share the disabled one too
+    if (icon instanceof CachedImageIcon) icon = ((CachedImageIcon)icon).getRealIcon();
 
     Icon disabledIcon = ourIcon2DisabledIcon.get(icon);
     if (disabledIcon == null) {
+      IconLoaderStats.increment(Counter.DISABLED_ICON_CACHE_MISS);
       if (!isGoodSize(icon)) {
         return EMPTY_ICON;
       }
+      IconEvent event = IconEvents.begin(IconEvents.Kind.DISABLED);
       final int scale = UIUtil.isRetina() ? 2 : 1;
       @SuppressWarnings("UndesirableClassUsage")
       BufferedImage image = new BufferedImage(scale*icon.getIconWidth(), scale*icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
@@ -293,12 +418,19 @@ public final class IconLoader {
 
       graphics.dispose();
 
+      long start = System.nanoTime();
       Image img = ImageUtil.filter(image, UIUtil.getGrayFilter());
+      IconLoaderStats.record(Phase.FILTER, start);
       if (UIUtil.isRetina()) img = RetinaImage.createFrom(img);
 
       disabledIcon = new JBImageIcon(img);
+      IconEvents.end(event, icon.toString(), scale > 1 ? "@2x" : null,
+                     4L * image.getWidth() * image.getHeight(), icon.getIconWidth(), icon.getIconHeight());
       ourIcon2DisabledIcon.put(icon, disabledIcon);
     }
+    else {
+      IconLoaderStats.increment(Counter.DISABLED_ICON_CACHE_HIT);
+    }
     return disabledIcon;
   }
 
@@ -326,6 +458,13 @@ public final class IconLoader {
 
       @Override
       public void paintIcon(final Component c, final Graphics g, final int x, final int y) {
+        if (PREBLEND_TRANSPARENT_ICONS) {
+          Image image = getBlendedImage(icon, alpha);
+          if (image != null) {
+            UIUtil.drawImage(g, image, x, y, c);
+            return;
+          }
+        }
         final Graphics2D g2 = (Graphics2D)g;
         final Composite saveComposite = g2.getComposite();
         g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, alpha));
@@ -335,15 +474,87 @@ public final class IconLoader {
     };
   }
 
+  /**
+   * @return the icon blended with {@code alpha} into a raster, or {@code null} if the icon may change and can't be cached
+   */
+  @Nullable
+  private static Image getBlendedImage(@NotNull Icon icon, float alpha) {
+    if (!(icon instanceof CachedImageIcon || icon instanceof ImageIcon || icon instanceof CompositeIcon) || !isGoodSize(icon)) {
+      return null;
+    }
+    int scale = UIUtil.isRetina() ? 2 : 1;
+    int generation = getGeneration();
+    // changes identity whenever the icon is reloaded, patched or changed; may be the icon itself
+    Object state = icon instanceof CompositeIcon ? ((CompositeIcon)icon).getFlattenedImage(LabelHolder.ourFakeComponent)
+                                                 : getIconSnapshot(icon);
+    if (state == null) return null;
+
+    synchronized (ourTransparentIcons) {
+      List<Blended> blended = ourTransparentIcons.get(icon);
+      if (blended != null) {
+        for (Blended b : blended) {
+          if (b.alpha == alpha && b.scale == scale && b.generation == generation && b.state.get() == state) return b.image;
+        }
+      }
+    }
+
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(scale * icon.getIconWidth(), scale * icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.scale(scale, scale);
+    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+    icon.paintIcon(LabelHolder.ourFakeComponent, g, 0, 0);
+    g.dispose();
+    Image result = scale > 1 ? RetinaImage.createFrom(image) : image;
+
+    synchronized (ourTransparentIcons) {
+      List<Blended> blended = ourTransparentIcons.get(icon);
+      if (blended == null) {
+        blended = new ArrayList<Blended>(2);
+        ourTransparentIcons.put(icon, blended);
+      }
+      for (Iterator<Blended> it = blended.iterator(); it.hasNext(); ) {
+        Blended b = it.next();
+        if (b.alpha == alpha && b.scale == scale || b.generation != generation || b.state.get() != state) it.remove();
+      }
+      blended.add(new Blended(alpha, scale, generation, state, result));
+    }
+    return result;
+  }
+
+  private static class Blended {
+    private final float alpha;
+    private final int scale;
+    private final int generation;
+    // weak, as it may be the key of ourTransparentIcons, which must not be reachable from its value
+    private final WeakReference<Object> state;
+    private final Image image;
+
+    private Blended(float alpha, int scale, int generation, Object state, Image image) {
+      this.alpha = alpha;
+      this.scale = scale;
+      this.generation = generation;
+      this.state = new WeakReference<Object>(state);
+      this.image = image;
+    }
+  }
+
   /**
    * Gets a snapshot of the icon, immune to changes made by these calls:
    * {@link IconLoader#setScale(float)}, {@link IconLoader#setFilter(ImageFilter)}, {@link IconLoader#setUseDarkIcons(boolean)}
+   * <p/>
+   * A {@link LazyIcon} is resolved to the snapshot of the icon it computes.
    *
    * @param icon the source icon
    * @return the icon snapshot
    */
   @NotNull
   public static Icon getIconSnapshot(@NotNull Icon icon) {
+    if (icon instanceof LazyIcon) {
+      Icon computed = ((LazyIcon)icon).getOrComputeIcon();
+      if (computed == null) return icon;
+      icon = computed;
+    }
     if (icon instanceof CachedImageIcon) {
       return ((CachedImageIcon)icon).getRealIcon();
     }
@@ -354,11 +565,17 @@ public final class IconLoader {
     private volatile Object myRealIcon;
     public String myOriginalPath;
     private ClassLoader myClassLoader;
+    // the identity of the icon, it is cached under this URL
     @NotNull
-    private URL myUrl;
+    private final URL myUrl;
+    // the replacement of the icon installed by path patchers, if any
+    @Nullable
+    private volatile URL myPatchedUrl;
     private volatile boolean dark;
     private volatile float scale;
-    private volatile int numberOfPatchers = 0;
+    private volatile int myPatcherGeneration = ourPathTable.getGeneration();
+    // loaded by the prefetcher and not used since, see IconPrefetcher
+    private volatile boolean myPrefetched;
 
     private volatile ImageFilter filter;
     private final MyScaledIconsCache myScaledIconsCache = new MyScaledIconsCache();
@@ -374,6 +591,15 @@ public final class IconLoader {
     private synchronized ImageIcon getRealIcon() {
       if (isLoaderDisabled() && (myRealIcon == null || dark != USE_DARK_ICONS || scale != SCALE || filter != IMAGE_FILTER)) return EMPTY_ICON;
 
+      if (myPrefetched && !IconPrefetcher.isPrefetching()) {
+        myPrefetched = false;
+        IconPrefetcher.iconLoaded(myUrl);
+      }
+
+      if (myPatcherGeneration != ourPathTable.getGeneration()) {
+        repatch();
+      }
+
       if (!isValid()) {
         myRealIcon = null;
         dark = USE_DARK_ICONS;
@@ -388,31 +614,105 @@ public final class IconLoader {
       if (realIcon instanceof Reference) {
         icon = ((Reference<ImageIcon>)realIcon).get();
         if (icon != null) return (ImageIcon)icon;
+        IconLoaderStats.increment(Counter.SOFT_REFERENCE_CLEAR);
       }
 
-      Image image = ImageLoader.loadFromUrl(myUrl, true, filter);
-      icon = checkIcon(image, myUrl);
+      URL url = getLoadUrl();
+      Image image = ImageLoader.loadFromUrl(url, true, filter);
+      icon = checkIcon(image, url);
+      if (icon != null) {
+        if (IconPrefetcher.isPrefetching()) {
+          myPrefetched = true;
+        }
+        else {
+          IconPrefetcher.iconLoaded(myUrl);
+        }
+      }
 
       if (icon != null) {
-        if (icon.getIconWidth() < 50 && icon.getIconHeight() < 50) {
+        boolean small = icon.getIconWidth() < 50 && icon.getIconHeight() < 50;
+        icon = store(icon, small);
+        if (small) {
           realIcon = icon;
         }
         else {
           realIcon = new SoftReference<ImageIcon>(icon);
         }
         myRealIcon = realIcon;
+        ourLoadCount.incrementAndGet();
       }
 
       return icon == null ? EMPTY_ICON : icon;
     }
 
+    /**
+     * Picks the storage for a loaded icon: a palette for small icons with few colors, off-heap pixels
+     * for the rest if enabled, and finally shares it with pixel-identical icons.
+     */
+    @NotNull
+    private static ImageIcon store(@NotNull ImageIcon icon, boolean small) {
+      Image compact = small && PaletteImage.isEnabled() ? PaletteImage.compact(icon.getImage()) : null;
+      if (compact != null) {
+        if (compact != icon.getImage()) icon = new JBImageIcon(compact);
+      }
+      else if (OffHeapIcon.isEnabled()) {
+        OffHeapIcon offHeap = OffHeapIcon.create(icon);
+        if (offHeap != null) icon = offHeap;
+      }
+      return IconDeduplicator.intern(icon);
+    }
+
     private boolean isValid() {
       return dark == USE_DARK_ICONS && scale == SCALE && filter == IMAGE_FILTER;
     }
 
+    /**
+     * Remembers the path the icon was requested by, so path patchers can replace it; the first path wins.
+     */
+    private synchronized void setOriginalPath(@NotNull String path, @Nullable ClassLoader classLoader) {
+      if (myOriginalPath != null || classLoader == null) return;
+      myOriginalPath = path;
+      myClassLoader = classLoader;
+      // patchers installed before the path was known apply on the next use
+      myPatcherGeneration = -1;
+    }
+
+    /**
+     * Applies the current path patchers; the loaded image is dropped only if they map this icon elsewhere now.
+     * The icon keeps its own URL, so it stays cached under it and can be restored when the patcher is removed.
+     */
+    private void repatch() {
+      IconPathTable table = ourPathTable;
+      myPatcherGeneration = table.getGeneration();
+      if (myOriginalPath == null || myClassLoader == null) return;
+
+      Pair<String, ClassLoader> patched = patchPath(table, myOriginalPath, myClassLoader);
+      URL url = null;
+      if (patched != null && StringUtil.startsWithChar(patched.first, '/')) {
+        ClassLoader loader = patched.second == null ? myClassLoader : patched.second;
+        url = loader.getResource(patched.first.substring(1));
+        if (url != null && url.toExternalForm().equals(myUrl.toExternalForm())) url = null;
+      }
+
+      URL current = myPatchedUrl;
+      if (url == null ? current != null : current == null || !url.toExternalForm().equals(current.toExternalForm())) {
+        // while the images are still keyed by the old URL
+        myScaledIconsCache.clear();
+        myPatchedUrl = url;
+        myRealIcon = null;
+      }
+    }
+
+    @NotNull
+    private URL getLoadUrl() {
+      URL patched = myPatchedUrl;
+      return patched != null ? patched : myUrl;
+    }
+
     @Override
     public void paintIcon(Component c, Graphics g, int x, int y) {
       getRealIcon().paintIcon(c, g, x, y);
+      IconLoaderStats.firstPaint();
     }
 
     @Override
@@ -427,7 +727,7 @@ public final class IconLoader {
 
     @Override
     public String toString() {
-      return myUrl.toString();
+      return getLoadUrl().toString();
     }
 
     @Override
@@ -436,7 +736,7 @@ public final class IconLoader {
         return this;
       }
 
-      if (!isValid()) getRealIcon(); // force state update & cache reset
+      if (!isValid() || myPatcherGeneration != ourPathTable.getGeneration()) getRealIcon(); // force state update & cache reset
 
       Icon icon = myScaledIconsCache.getScaledIcon(scaleFactor);
       if (icon != null) {
@@ -446,66 +746,136 @@ public final class IconLoader {
     }
 
     private class MyScaledIconsCache {
-      // Map {false -> image}, {true -> image@2x}
-      private Map<Boolean, SoftReference<Image>> origImagesCache = Collections.synchronizedMap(new HashMap<Boolean, SoftReference<Image>>(2));
-
       private static final int SCALED_ICONS_CACHE_LIMIT = 5;
 
-      // Map {effective scale -> icon}
-      private Map<Float, SoftReference<Icon>> scaledIconsCache = Collections.synchronizedMap(new LinkedHashMap<Float, SoftReference<Icon>>(SCALED_ICONS_CACHE_LIMIT) {
-        @Override
-        public boolean removeEldestEntry(Map.Entry<Float, SoftReference<Icon>> entry) {
-          return size() > SCALED_ICONS_CACHE_LIMIT;
-        }
-      });
+      // effective scales cached for this icon, in access order; the icons themselves live in ourScaledIcons
+      private final LinkedHashMap<Float, Boolean> myScales = new LinkedHashMap<Float, Boolean>(SCALED_ICONS_CACHE_LIMIT, 0.75f, true);
+      // loaded original images: bit 0 for the regular one, bit 1 for @2x
+      private volatile int myOrigImages;
 
       public Image getOrigImage(boolean retina) {
-        Image img = SoftReference.dereference(origImagesCache.get(retina));
+        // the original images are stored with scale 1 and 2
+        ScaledKey key = new ScaledKey(getLoadUrl(), retina ? 2f : 1f);
+        Image img = ourOrigImages.get(key);
 
         if (img == null) {
-          img = ImageLoader.loadFromUrl(myUrl, UIUtil.isUnderDarcula(), retina, filter);
-          origImagesCache.put(retina, new SoftReference<Image>(img));
+          int bit = retina ? 2 : 1;
+          if ((myOrigImages & bit) != 0) IconLoaderStats.increment(Counter.SOFT_REFERENCE_CLEAR);
+          img = ImageLoader.loadFromUrl(getLoadUrl(), UIUtil.isUnderDarcula(), retina, filter);
+          if (img != null) {
+            ourOrigImages.put(key, img);
+            myOrigImages |= bit;
+          }
         }
         return img;
       }
 
       public Icon getScaledIcon(float scale) {
         float effectiveScale = scale * JBUI.scale(1f);
-        Icon icon = SoftReference.dereference(scaledIconsCache.get(effectiveScale));
+        ScaledKey key = new ScaledKey(getLoadUrl(), effectiveScale);
+        Icon icon = ourScaledIcons.get(key);
 
         if (icon == null) {
-          boolean needRetinaImage = (effectiveScale >= 1.5f || UIUtil.isRetina());
-          Image image = getOrigImage(needRetinaImage);
-
-          if (image != null) {
-            Image iconImage = getRealIcon().getImage();
-            int width = (int)(ImageUtil.getRealWidth(iconImage) * scale);
-            int height = (int)(ImageUtil.getRealHeight(iconImage) * scale);
+          IconLoaderStats.increment(Counter.SCALED_ICON_CACHE_MISS);
+          if (hasScale(effectiveScale)) IconLoaderStats.increment(Counter.SOFT_REFERENCE_CLEAR);
+          Image resizedImage = null;
+          if (ImageLoader.isSvg(getLoadUrl())) {
+            // rasterize the vector source right at the target scale
+            float rasterScale = scale * (UIUtil.isRetina() ? 2f : JBUI.scale(1f));
+            resizedImage = ImageLoader.loadSvgFromUrl(getLoadUrl(), UIUtil.isUnderDarcula(), rasterScale, filter);
+          }
+          else {
+            boolean needRetinaImage = (effectiveScale >= 1.5f || UIUtil.isRetina());
+            Image image = getOrigImage(needRetinaImage);
+
+            if (image != null) {
+              Image iconImage = getRealIcon().getImage();
+              int width = (int)(ImageUtil.getRealWidth(iconImage) * scale);
+              int height = (int)(ImageUtil.getRealHeight(iconImage) * scale);
+
+              long start = System.nanoTime();
+              resizedImage = Scalr.resize(ImageUtil.toBufferedImage(image), Scalr.Method.ULTRA_QUALITY, width, height);
+              IconLoaderStats.record(Phase.SCALE, start);
+            }
+          }
 
-            Image resizedImage = Scalr.resize(ImageUtil.toBufferedImage(image), Scalr.Method.ULTRA_QUALITY, width, height);
+          if (resizedImage != null) {
             if (UIUtil.isRetina()) resizedImage = RetinaImage.createFrom(resizedImage);
 
             icon = getIcon(resizedImage);
-            scaledIconsCache.put(effectiveScale, new SoftReference<Icon>(icon));
+            ourScaledIcons.put(key, icon);
+            addScale(effectiveScale);
           }
         }
+        else {
+          IconLoaderStats.increment(Counter.SCALED_ICON_CACHE_HIT);
+          hasScale(effectiveScale); // keeps the access order for SCALED_ICONS_CACHE_LIMIT
+        }
         return icon;
       }
 
+      private boolean hasScale(float scale) {
+        synchronized (myScales) {
+          return myScales.get(scale) != null;
+        }
+      }
+
+      private void addScale(float scale) {
+        synchronized (myScales) {
+          myScales.put(scale, Boolean.TRUE);
+          if (myScales.size() > SCALED_ICONS_CACHE_LIMIT) {
+            Iterator<Float> eldest = myScales.keySet().iterator();
+            IconLoaderStats.increment(Counter.EVICTION);
+            ourScaledIcons.remove(new ScaledKey(getLoadUrl(), eldest.next()));
+            eldest.remove();
+          }
+        }
+      }
+
       public void clear() {
-        scaledIconsCache.clear();
-        origImagesCache.clear();
+        URL url = getLoadUrl();
+        synchronized (myScales) {
+          for (Float scale : myScales.keySet()) {
+            ourScaledIcons.remove(new ScaledKey(url, scale));
+          }
+          myScales.clear();
+        }
+        ourOrigImages.remove(new ScaledKey(url, 1f));
+        ourOrigImages.remove(new ScaledKey(url, 2f));
+        myOrigImages = 0;
       }
     }
   }
 
+  /**
+   * Identifies an image loaded from a particular URL at a particular scale. Holds the URL as a string,
+   * so cached images don't keep their icons reachable and keys are compared without resolving hosts.
+   */
+  private static final class ScaledKey {
+    private final String myUrl;
+    private final float myScale;
+
+    private ScaledKey(@NotNull URL url, float scale) {
+      myUrl = url.toExternalForm();
+      myScale = scale;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ScaledKey)) return false;
+      ScaledKey key = (ScaledKey)o;
+      return myScale == key.myScale && myUrl.equals(key.myUrl);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * myUrl.hashCode() + Float.floatToIntBits(myScale);
+    }
+  }
+
   public abstract static class LazyIcon implements Icon {
-    private boolean myWasComputed;
-    private Icon myIcon;
-    private boolean isDarkVariant = USE_DARK_ICONS;
-    private float scale = SCALE;
-//    private int numberOfPatchers = 0;
-    private ImageFilter filter = IMAGE_FILTER;
+    // the computed icon with the state it was computed for, replaced as a whole; null until computed
+    private volatile Computed myComputed;
 
     @Override
     public void paintIcon(Component c, Graphics g, int x, int y) {
@@ -527,17 +897,24 @@ public final class IconLoader {
       return icon != null ? icon.getIconHeight() : 0;
     }
 
-    protected final synchronized Icon getOrComputeIcon() {
-      if (!myWasComputed || isDarkVariant != USE_DARK_ICONS || scale != SCALE || filter != IMAGE_FILTER /*|| numberOfPatchers != ourPatchers.size()*/) {
-        isDarkVariant = USE_DARK_ICONS;
-        scale = SCALE;
-        filter = IMAGE_FILTER;
-        myWasComputed = true;
-//        numberOfPatchers = ourPatchers.size();
-        myIcon = compute();
+    protected final Icon getOrComputeIcon() {
+      Computed computed = myComputed;
+      if (computed != null && computed.isUpToDate()) return computed.icon;
+
+      synchronized (this) {
+        computed = myComputed;
+        if (computed == null || !computed.isUpToDate()) {
+          // the state is taken before computing, a change during compute() triggers another one
+          boolean dark = USE_DARK_ICONS;
+          float scale = SCALE;
+          ImageFilter filter = IMAGE_FILTER;
+          int patcherGeneration = ourPathTable.getGeneration();
+          computed = new Computed(compute(), dark, scale, filter, patcherGeneration);
+          myComputed = computed;
+          ourLoadCount.incrementAndGet();
+        }
+        return computed.icon;
       }
-
-      return myIcon;
     }
 
     public final void load() {
@@ -545,6 +922,26 @@ public final class IconLoader {
     }
 
     protected abstract Icon compute();
+
+    private static final class Computed {
+      private final Icon icon;
+      private final boolean dark;
+      private final float scale;
+      private final ImageFilter filter;
+      private final int patcherGeneration;
+
+      private Computed(Icon icon, boolean dark, float scale, ImageFilter filter, int patcherGeneration) {
+        this.icon = icon;
+        this.dark = dark;
+        this.scale = scale;
+        this.filter = filter;
+        this.patcherGeneration = patcherGeneration;
+      }
+
+      private boolean isUpToDate() {
+        return dark == USE_DARK_ICONS && scale == SCALE && filter == IMAGE_FILTER && patcherGeneration == ourPathTable.getGeneration();
+      }
+    }
   }
 
   private static class LabelHolder {
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.OffHeapArena;
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on icon loading counters. Every counter is a striped {@link LongAdder},
+ * so recording from many threads stays cheap and contention-free.
+ * <p/>
+ * The counters are published over JMX only after {@link #register()} is called, so loading icons never starts JMX.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class IconLoaderStats implements IconLoaderStatsMXBean {
+  public enum Counter {
+    ICON_CACHE_HIT, ICON_CACHE_MISS,
+    SCALED_ICON_CACHE_HIT, SCALED_ICON_CACHE_MISS,
+    DISABLED_ICON_CACHE_HIT, DISABLED_ICON_CACHE_MISS,
+    VARIANT_PROBE, FAILED_VARIANT_PROBE,
+    BYTES_READ, BYTES_DECODED,
+    EVICTION, SOFT_REFERENCE_CLEAR,
+    DEDUP_HIT, DEDUP_MISS, DEDUP_BYTES_SAVED,
+    PREFETCHED_ICON
+  }
+
+  public enum Phase {DECODE, FILTER, SCALE}
+
+  // bucket i counts operations shorter than 2^i microseconds, the last bucket is unbounded
+  private static final int BUCKETS = 21;
+
+  private static final IconLoaderStats INSTANCE = new IconLoaderStats();
+  private static final String OBJECT_NAME = "com.bulenkov.iconloader:type=IconLoaderStats";
+
+
+  private static volatile long ourFirstPaintMillis = -1;
+
+  private final LongAdder[] myCounters = createAdders(Counter.values().length);
+  private final LongAdder[][] myHistograms = new LongAdder[Phase.values().length][];
+
+  private IconLoaderStats() {
+    for (int i = 0; i < myHistograms.length; i++) {
+      myHistograms[i] = createAdders(BUCKETS);
+    }
+  }
+
+  @NotNull
+  public static IconLoaderStats getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers the statistics on the platform MBean server, does nothing if already registered.
+   *
+   * @return {@code false} if JMX is not available
+   */
+  public static synchronized boolean register() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (!server.isRegistered(name)) {
+        server.registerMBean(INSTANCE, name);
+      }
+      return true;
+    }
+    catch (InstanceAlreadyExistsException e) {
+      // registered by another class loader meanwhile
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  public static void increment(@NotNull Counter counter) {
+    INSTANCE.myCounters[counter.ordinal()].increment();
+  }
+
+  public static void add(@NotNull Counter counter, long value) {
+    INSTANCE.myCounters[counter.ordinal()].add(value);
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos}, taken with {@link System#nanoTime()}.
+   */
+  public static void record(@NotNull Phase phase, long startNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    INSTANCE.myHistograms[phase.ordinal()][bucket].increment();
+  }
+
+  /**
+   * Called after an icon is painted; remembers the time of the first paint in this JVM.
+   */
+  public static void firstPaint() {
+    if (ourFirstPaintMillis < 0) {
+      synchronized (IconLoaderStats.class) {
+        if (ourFirstPaintMillis < 0) {
+          ourFirstPaintMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+      }
+    }
+  }
+
+  public long get(@NotNull Counter counter) {
+    return myCounters[counter.ordinal()].sum();
+  }
+
+  @NotNull
+  public long[] getHistogram(@NotNull Phase phase) {
+    LongAdder[] buckets = myHistograms[phase.ordinal()];
+    long[] result = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      result[i] = buckets[i].sum();
+    }
+    return result;
+  }
+
+  @Override
+  public long getIconCacheHits() {
+    return get(Counter.ICON_CACHE_HIT);
+  }
+
+  @Override
+  public long getIconCacheMisses() {
+    return get(Counter.ICON_CACHE_MISS);
+  }
+
+  @Override
+  public long getScaledIconCacheHits() {
+    return get(Counter.SCALED_ICON_CACHE_HIT);
+  }
+
+  @Override
+  public long getScaledIconCacheMisses() {
+    return get(Counter.SCALED_ICON_CACHE_MISS);
+  }
+
+  @Override
+  public long getDisabledIconCacheHits() {
+    return get(Counter.DISABLED_ICON_CACHE_HIT);
+  }
+
+  @Override
+  public long getDisabledIconCacheMisses() {
+    return get(Counter.DISABLED_ICON_CACHE_MISS);
+  }
+
+  @Override
+  public long getVariantProbes() {
+    return get(Counter.VARIANT_PROBE);
+  }
+
+  @Override
+  public long getFailedVariantProbes() {
+    return get(Counter.FAILED_VARIANT_PROBE);
+  }
+
+  @Override
+  public long getBytesRead() {
+    return get(Counter.BYTES_READ);
+  }
+
+  @Override
+  public long getBytesDecoded() {
+    return get(Counter.BYTES_DECODED);
+  }
+
+  @Override
+  public long getEvictions() {
+    return get(Counter.EVICTION);
+  }
+
+  @Override
+  public long getSoftReferenceClears() {
+    return get(Counter.SOFT_REFERENCE_CLEAR);
+  }
+
+  @Override
+  public long getDedupHits() {
+    return get(Counter.DEDUP_HIT);
+  }
+
+  @Override
+  public long getDedupMisses() {
+    return get(Counter.DEDUP_MISS);
+  }
+
+  @Override
+  public long getDedupBytesSaved() {
+    return get(Counter.DEDUP_BYTES_SAVED);
+  }
+
+  @Override
+  public double getDedupRatio() {
+    long hits = getDedupHits();
+    long total = hits + getDedupMisses();
+    return total == 0 ? 0 : (double)hits / total;
+  }
+
+  @Override
+  public long getOffHeapReservedBytes() {
+    return OffHeapArena.getReservedBytes();
+  }
+
+  @Override
+  public long getOffHeapUsedBytes() {
+    return OffHeapArena.getUsedBytes();
+  }
+
+  @Override
+  public long getPrefetchedIcons() {
+    return get(Counter.PREFETCHED_ICON);
+  }
+
+  @Override
+  public long getTimeToFirstIconPaintMillis() {
+    return ourFirstPaintMillis;
+  }
+
+  @Override
+  public long[] getLatencyHistogramBounds() {
+    long[] bounds = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      bounds[i] = 1L << i;
+    }
+    bounds[BUCKETS - 1] = Long.MAX_VALUE;
+    return bounds;
+  }
+
+  @Override
+  public long[] getDecodeLatencyHistogram() {
+    return getHistogram(Phase.DECODE);
+  }
+
+  @Override
+  public long[] getFilterLatencyHistogram() {
+    return getHistogram(Phase.FILTER);
+  }
+
+  @Override
+  public long[] getScaleLatencyHistogram() {
+    return getHistogram(Phase.SCALE);
+  }
+
+  @Override
+  public void reset() {
+    for (LongAdder counter : myCounters) {
+      counter.reset();
+    }
+    for (LongAdder[] histogram : myHistograms) {
+      for (LongAdder bucket : histogram) {
+        bucket.reset();
+      }
+    }
+  }
+
+  private static LongAdder[] createAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+/**
+ * Cumulative icon loading statistics, registered as {@code com.bulenkov.iconloader:type=IconLoaderStats}
+ * by {@link IconLoaderStats#register()}.
+ * <p/>
+ * Latency histograms are arrays of counts where the bucket {@code i} holds the operations that took less than
+ * {@code getLatencyHistogramBounds()[i]} microseconds (and not less than the previous bound).
+ *
+ * @author Konstantin Bulenkov
+ */
+public interface IconLoaderStatsMXBean {
+  long getIconCacheHits();
+
+  long getIconCacheMisses();
+
+  long getScaledIconCacheHits();
+
+  long getScaledIconCacheMisses();
+
+  long getDisabledIconCacheHits();
+
+  long getDisabledIconCacheMisses();
+
+  long getVariantProbes();
+
+  long getFailedVariantProbes();
+
+  long getBytesRead();
+
+  long getBytesDecoded();
+
+  long getEvictions();
+
+  long getSoftReferenceClears();
+
+  long getDedupHits();
+
+  long getDedupMisses();
+
+  long getDedupBytesSaved();
+
+  /**
+   * @return the share of loaded icons which turned out to be pixel-identical to an already loaded one
+   */
+  double getDedupRatio();
+
+  /**
+   * @return native memory reserved for off-heap icon pixels, see {@code OffHeapIcon}
+   */
+  long getOffHeapReservedBytes();
+
+  long getOffHeapUsedBytes();
+
+  /**
+   * @return icons loaded ahead of time by {@code IconPrefetcher}
+   */
+  long getPrefetchedIcons();
+
+  /**
+   * @return milliseconds from the JVM start to the first painted icon, or -1 if nothing was painted yet
+   */
+  long getTimeToFirstIconPaintMillis();
+
+  long[] getLatencyHistogramBounds();
+
+  long[] getDecodeLatencyHistogram();
+
+  long[] getFilterLatencyHistogram();
+
+  long[] getScaleLatencyHistogram();
+
+  void reset();
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Remaps icon paths, e.g. to replace icons with the ones of a theme.
+ * Install with {@link IconLoader#installPathPatcher(IconPathPatcher)}.
+ * <p/>
+ * Mappings are declarative so that all installed patchers can be compiled into a single lookup table:
+ * a key ending with {@code '/'} remaps every icon under that directory, any other key remaps a single icon.
+ * An exact mapping wins over a directory one, a longer directory wins over a shorter one, and among
+ * patchers mapping the same key the one installed last wins. Patchers are not chained.
+ *
+ * @author Konstantin Bulenkov
+ */
+public abstract class IconPathPatcher {
+  /**
+   * Called whenever the installed patchers are compiled into a lookup table, i.e. on every install or removal
+   * of any patcher, so it should be cheap and keep returning the same mappings; reinstall the patcher to change them.
+   *
+   * @return map of absolute icon paths ({@code /icons/print.png}) or directories ({@code /icons/}) to their replacements
+   */
+  @NotNull
+  public abstract Map<String, String> getPathMappings();
+
+  /**
+   * @return class loader to load the patched icon from
+   */
+  @Nullable
+  public ClassLoader getContextClassLoader(@NotNull String path, @Nullable ClassLoader originalClassLoader) {
+    return originalClassLoader;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable compiled form of the installed {@link IconPathPatcher}s: a hash table of exact paths
+ * and a trie of directories keyed by path segments, so a lookup costs O(path length) however
+ * many patchers are installed.
+ *
+ * @author Konstantin Bulenkov
+ */
+final class IconPathTable {
+  static final IconPathTable EMPTY = new IconPathTable(0);
+
+  private final int myGeneration;
+  private final Map<String, Pair<String, IconPathPatcher>> myExact = new HashMap<String, Pair<String, IconPathPatcher>>();
+  private final Node myRoot = new Node();
+
+  private IconPathTable(int generation) {
+    myGeneration = generation;
+  }
+
+  @NotNull
+  static IconPathTable compile(@NotNull List<IconPathPatcher> patchers, int generation) {
+    IconPathTable table = new IconPathTable(generation);
+    for (IconPathPatcher patcher : patchers) {
+      for (Map.Entry<String, String> mapping : patcher.getPathMappings().entrySet()) {
+        String from = mapping.getKey();
+        String to = mapping.getValue();
+        if (from == null || to == null) continue;
+        if (from.endsWith("/")) {
+          table.addDirectory(from, to, patcher);
+        }
+        else {
+          table.myExact.put(from, Pair.create(to, patcher));
+        }
+      }
+    }
+    return table;
+  }
+
+  int getGeneration() {
+    return myGeneration;
+  }
+
+  boolean isEmpty() {
+    return myExact.isEmpty() && myRoot.children == null;
+  }
+
+  /**
+   * @return the patched path and the patcher which mapped it, or {@code null} if no patcher maps the path
+   */
+  @Nullable
+  Pair<String, IconPathPatcher> lookup(@NotNull String path) {
+    Pair<String, IconPathPatcher> exact = myExact.get(path);
+    if (exact != null) return exact;
+
+    Node node = myRoot;
+    Node longest = null;
+    int longestEnd = 0;
+    int start = 0;
+    while (node.children != null) {
+      int slash = path.indexOf('/', start);
+      if (slash < 0) break;
+      node = node.children.get(path.substring(start, slash));
+      if (node == null) break;
+      start = slash + 1;
+      if (node.replacement != null) {
+        longest = node;
+        longestEnd = start;
+      }
+    }
+    return longest == null ? null : Pair.create(longest.replacement + path.substring(longestEnd), longest.patcher);
+  }
+
+  private void addDirectory(@NotNull String directory, @NotNull String replacement, @NotNull IconPathPatcher patcher) {
+    Node node = myRoot;
+    int start = 0;
+    int slash;
+    while ((slash = directory.indexOf('/', start)) >= 0) {
+      String segment = directory.substring(start, slash);
+      if (node.children == null) node.children = new HashMap<String, Node>();
+      Node child = node.children.get(segment);
+      if (child == null) {
+        child = new Node();
+        node.children.put(segment, child);
+      }
+      node = child;
+      start = slash + 1;
+    }
+    node.replacement = replacement.endsWith("/") ? replacement : replacement + "/";
+    node.patcher = patcher;
+  }
+
+  private static class Node {
+    private Map<String, Node> children;
+    private String replacement;
+    private IconPathPatcher patcher;
+  }
+}
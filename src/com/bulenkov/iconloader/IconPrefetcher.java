@@ -0,0 +1,222 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.util.ConcurrencyUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Records which icons a session loads during its first seconds and prefetches them in parallel on the next start,
+ * while the splash screen is still showing, so the first frame paints from already decoded icons.
+ * <p/>
+ * Call {@link #start(File)} early in {@code main}, or {@link #start()} to use {@code -Dicons.prefetch.file}.
+ * The recording lasts {@code -Dicons.prefetch.record.seconds} (15 by default) and then replaces the file.
+ * Prefetched icons are recorded only once the session uses them, so icons that are no longer needed drop out.
+ * Compare {@link IconLoaderStats#getTimeToFirstIconPaintMillis()} of sessions with and without the file.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class IconPrefetcher {
+  private static final String HEADER = "# icon prefetch v1";
+  private static final int MAX_ICONS = 2000;
+
+  // insertion-ordered set of icon URLs loaded while recording, null when not recording
+  private static volatile Map<String, Boolean> ourRecorded;
+  private static volatile CountDownLatch ourReplay = new CountDownLatch(0);
+  // set while a replayed icon is loaded, such a load doesn't mean the icon is used
+  private static final ThreadLocal<Boolean> ourPrefetching = new ThreadLocal<Boolean>();
+
+  private IconPrefetcher() {
+  }
+
+  /**
+   * Replays and records with the file given by {@code -Dicons.prefetch.file}; does nothing if it isn't set.
+   */
+  public static void start() {
+    String file = System.getProperty("icons.prefetch.file");
+    if (file != null && file.length() > 0) start(new File(file));
+  }
+
+  public static void start(@NotNull File file) {
+    replay(file);
+    startRecording(file, TimeUnit.SECONDS.toMillis(Integer.getInteger("icons.prefetch.record.seconds", 15)));
+  }
+
+  /**
+   * Starts loading the icons listed in {@code file} in background.
+   *
+   * @return number of icons scheduled
+   */
+  public static int replay(@NotNull File file) {
+    final List<URL> urls = read(file);
+    if (urls.isEmpty()) return 0;
+
+    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, ConcurrencyUtil.newNamedThreadFactory("IconPrefetcher", true, Thread.NORM_PRIORITY));
+    final CountDownLatch latch = new CountDownLatch(urls.size());
+    ourReplay = latch;
+    for (final URL url : urls) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          ourPrefetching.set(Boolean.TRUE);
+          try {
+            Icon icon = IconLoader.findIcon(url);
+            if (icon != null) {
+              IconLoader.getIconSnapshot(icon);
+              IconLoaderStats.increment(Counter.PREFETCHED_ICON);
+            }
+          }
+          catch (Throwable ignore) {
+            // a stale entry, the icon will be loaded on demand if it's still needed
+          }
+          finally {
+            ourPrefetching.remove();
+            latch.countDown();
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    return urls.size();
+  }
+
+  /**
+   * Waits until the icons scheduled by the last {@link #replay(File)} are loaded.
+   *
+   * @return {@code false} if the timeout elapsed first
+   */
+  public static boolean awaitReplay(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    return ourReplay.await(timeout, unit);
+  }
+
+  /**
+   * Records icons loaded during the next {@code durationMillis} and then writes them to {@code file}.
+   */
+  public static void startRecording(@NotNull final File file, long durationMillis) {
+    ourRecorded = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>());
+    final ScheduledExecutorService timer = ConcurrencyUtil.newSingleScheduledThreadExecutor("IconPrefetcher recorder");
+    timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        stopRecording(file);
+        timer.shutdown();
+      }
+    }, durationMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the recording and writes the icons recorded so far, if the recording is still active.
+   */
+  public static void stopRecording(@NotNull File file) {
+    Map<String, Boolean> recorded = ourRecorded;
+    ourRecorded = null;
+    if (recorded == null) return;
+
+    List<String> urls;
+    synchronized (recorded) {
+      urls = new ArrayList<String>(recorded.keySet());
+    }
+    write(file, urls);
+  }
+
+  /**
+   * @return whether the current thread loads replayed icons, see {@link #replay(File)}
+   */
+  static boolean isPrefetching() {
+    return ourPrefetching.get() != null;
+  }
+
+  /**
+   * Records an icon used by the session: loaded, or used for the first time after it was prefetched.
+   */
+  static void iconLoaded(@NotNull URL url) {
+    Map<String, Boolean> recorded = ourRecorded;
+    if (recorded != null && recorded.size() < MAX_ICONS) {
+      recorded.put(url.toExternalForm(), Boolean.TRUE);
+    }
+  }
+
+  @NotNull
+  private static List<URL> read(@NotNull File file) {
+    List<URL> urls = new ArrayList<URL>();
+    if (!file.isFile()) return urls;
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      if (!HEADER.equals(reader.readLine())) return urls;
+      String line;
+      while ((line = reader.readLine()) != null && urls.size() < MAX_ICONS) {
+        if (line.length() > 0) urls.add(new URL(line));
+      }
+    }
+    catch (IOException ignore) {
+      // an unreadable or partially written file is just a missed prefetch
+    }
+    finally {
+      close(reader);
+    }
+    return urls;
+  }
+
+  private static void write(@NotNull File file, @NotNull List<String> urls) {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) return;
+    File temp = new File(file.getPath() + ".tmp");
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+      writer.write(HEADER);
+      writer.write('\n');
+      for (String url : urls) {
+        writer.write(url);
+        writer.write('\n');
+      }
+      writer.close();
+      writer = null;
+      if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+      }
+    }
+    catch (IOException ignore) {
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+    }
+    finally {
+      close(writer);
+    }
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    }
+    catch (IOException ignore) {
+    }
+  }
+}
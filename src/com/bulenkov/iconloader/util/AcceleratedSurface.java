@@ -0,0 +1,252 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.awt.*;
+import java.awt.image.ImageObserver;
+import java.awt.image.VolatileImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps a copy of a frequently painted image in a {@link VolatileImage} compatible with the screen
+ * it is painted to. An image is promoted only after it was painted {@link #PROMOTION_THRESHOLD} times,
+ * and at most {@link #MAX_SURFACES} images are promoted at once: the least painted surface is demoted
+ * to make room for a new one. A surface which lost this competition retries only after another
+ * {@link #PROMOTION_THRESHOLD} paints. Lost surface contents are restored from the heap raster.
+ * <p/>
+ * The source image is weakly referenced, promoted surfaces of collected images are demoted on the next promotion.
+ * <p/>
+ * Disabled by default, use {@code -Dicons.accelerated.surfaces=true} or {@link #setEnabled(boolean)}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class AcceleratedSurface {
+  private static final int PROMOTION_THRESHOLD = 32;
+  private static final int MAX_SURFACES = 256;
+  private static final int MAX_RESTORE_ATTEMPTS = 3;
+
+  private static volatile boolean ourEnabled = Registry.is("icons.accelerated.surfaces");
+  private static volatile boolean ourScreenOnly = true;
+  private static final List<AcceleratedSurface> ourPromoted = new ArrayList<AcceleratedSurface>();
+
+  private final WeakReference<Image> mySource;
+  // paint counters are updated without synchronization, they only need to be approximate
+  private int myPaintCount;
+  private int myNextPromotion = PROMOTION_THRESHOLD;
+  private volatile VolatileImage myVolatileImage;
+
+  AcceleratedSurface(@NotNull Image source) {
+    mySource = new WeakReference<Image>(source);
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+    if (!enabled) {
+      synchronized (ourPromoted) {
+        for (AcceleratedSurface surface : ourPromoted) {
+          surface.demote();
+        }
+        ourPromoted.clear();
+      }
+    }
+  }
+
+  /**
+   * Allows to promote images painted to off-screen images, which have no benefit from it otherwise.
+   */
+  @TestOnly
+  static void setScreenOnly(boolean screenOnly) {
+    ourScreenOnly = screenOnly;
+  }
+
+  @TestOnly
+  static int getPromotedCount() {
+    synchronized (ourPromoted) {
+      return ourPromoted.size();
+    }
+  }
+
+  @TestOnly
+  VolatileImage getVolatileImage() {
+    return myVolatileImage;
+  }
+
+  @TestOnly
+  void setVolatileImage(@NotNull VolatileImage image) {
+    myVolatileImage = image;
+  }
+
+  boolean isFor(Image image) {
+    return mySource.get() == image;
+  }
+
+  /**
+   * Paints the image from the accelerated surface if the image is hot enough to be promoted.
+   *
+   * @return {@code false} if the caller should paint the heap raster itself
+   */
+  boolean paint(@NotNull Graphics g, int x, int y, ImageObserver observer) {
+    if (!ourEnabled || !(g instanceof Graphics2D)) return false;
+
+    GraphicsConfiguration gc = ((Graphics2D)g).getDeviceConfiguration();
+    if (gc == null || ourScreenOnly && gc.getDevice().getType() != GraphicsDevice.TYPE_RASTER_SCREEN) return false;
+
+    Image source = mySource.get();
+    if (source == null) return false;
+
+    myPaintCount++;
+    VolatileImage image = myVolatileImage;
+    if (image == null) {
+      if (myPaintCount < myNextPromotion) return false;
+      if (!promote(gc, source)) {
+        myNextPromotion = myPaintCount + PROMOTION_THRESHOLD;
+        return false;
+      }
+    }
+
+    Image raster = getRaster(source);
+    int width = raster.getWidth(observer);
+    int height = raster.getHeight(observer);
+    if (width <= 0 || height <= 0) return false;
+    // same as UIUtil.drawImage: a wrapper without a delegate is its own double-sized raster
+    boolean hidpi = source instanceof JBHiDPIScaledImage;
+    int logicalWidth = !hidpi ? width : raster == source ? width / 2 : source.getWidth(observer);
+    int logicalHeight = !hidpi ? height : raster == source ? height / 2 : source.getHeight(observer);
+
+    for (int attempt = 0; attempt < MAX_RESTORE_ATTEMPTS; attempt++) {
+      image = validate(gc, raster, width, height);
+      if (image == null) return false;
+      if (hidpi) {
+        // same as UIUtil.drawImage: half scale into the logical bounds
+        g.drawImage(image, x, y, x + logicalWidth, y + logicalHeight, 0, 0, 2 * logicalWidth, 2 * logicalHeight, observer);
+      }
+      else {
+        g.drawImage(image, x, y, observer);
+      }
+      if (!image.contentsLost()) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Makes the promoted surface usable with {@code gc}, re-creating or re-rendering it if it was lost.
+   *
+   * @return the surface to draw, or {@code null} if the image is not promoted anymore
+   */
+  @Nullable
+  VolatileImage validate(@NotNull GraphicsConfiguration gc, @NotNull Image raster, int width, int height) {
+    VolatileImage image = myVolatileImage;
+    if (image == null) return null;
+
+    int status = image.validate(gc);
+    if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+      image.flush();
+      image = createVolatileImage(gc, width, height);
+      if (image == null) {
+        demote();
+        return null;
+      }
+      myVolatileImage = image;
+      status = VolatileImage.IMAGE_RESTORED;
+    }
+    if (status == VolatileImage.IMAGE_RESTORED) {
+      render(image, raster);
+    }
+    return image;
+  }
+
+  private boolean promote(@NotNull GraphicsConfiguration gc, @NotNull Image source) {
+    synchronized (ourPromoted) {
+      if (myVolatileImage != null) return true;
+      for (Iterator<AcceleratedSurface> iterator = ourPromoted.iterator(); iterator.hasNext(); ) {
+        AcceleratedSurface surface = iterator.next();
+        if (surface.mySource.get() == null) {
+          iterator.remove();
+          surface.demote();
+        }
+      }
+      if (ourPromoted.size() >= MAX_SURFACES) {
+        // age promoted surfaces on every competition, so the ones which are not painted anymore get demoted
+        AcceleratedSurface coldest = ourPromoted.get(0);
+        for (AcceleratedSurface surface : ourPromoted) {
+          surface.myPaintCount >>= 1;
+          if (surface.myPaintCount < coldest.myPaintCount) coldest = surface;
+        }
+        if (coldest.myPaintCount >= myPaintCount) return false;
+        ourPromoted.remove(coldest);
+        coldest.demote();
+      }
+      Image raster = getRaster(source);
+      VolatileImage image = createVolatileImage(gc, raster.getWidth(null), raster.getHeight(null));
+      if (image == null) return false;
+      render(image, raster);
+      myVolatileImage = image;
+      ourPromoted.add(this);
+      return true;
+    }
+  }
+
+  private void demote() {
+    VolatileImage image = myVolatileImage;
+    myVolatileImage = null;
+    myPaintCount = 0;
+    myNextPromotion = PROMOTION_THRESHOLD;
+    if (image != null) image.flush();
+  }
+
+  @NotNull
+  private static Image getRaster(@NotNull Image source) {
+    if (source instanceof JBHiDPIScaledImage) {
+      Image delegate = ((JBHiDPIScaledImage)source).getDelegate();
+      if (delegate != null) return delegate;
+    }
+    return source;
+  }
+
+  private static void render(@NotNull VolatileImage target, @NotNull Image raster) {
+    Graphics2D g = target.createGraphics();
+    try {
+      g.setComposite(AlphaComposite.Src);
+      g.drawImage(raster, 0, 0, null);
+    }
+    finally {
+      g.dispose();
+    }
+  }
+
+  private static VolatileImage createVolatileImage(@NotNull GraphicsConfiguration gc, int width, int height) {
+    if (width <= 0 || height <= 0) return null;
+    try {
+      return gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+}
@@ -22,18 +22,19 @@ import java.awt.*;
  * @author Konstantin Bulenkov
  */
 public class ColorUtil {
-  private static int shift(int colorComponent, double d) {
-    final int n = (int) (colorComponent * d);
-    return n > 255 ? 255 : n < 0 ? 0 : n;
-  }
-
+  /**
+   * @see PackedColor#shift(int, double)
+   */
   public static Color shift(Color c, double d) {
-    return new Color(shift(c.getRed(), d), shift(c.getGreen(), d), shift(c.getBlue(), d), c.getAlpha());
+    return new Color(PackedColor.shift(c.getRGB(), d), true);
   }
 
+  /**
+   * @see PackedColor#withAlpha(int, int)
+   */
   public static Color toAlpha(Color color, int a) {
     Color c = color != null ? color : Color.black;
-    return new Color(c.getRed(), c.getGreen(), c.getBlue(), a);
+    return new Color(PackedColor.withAlpha(c.getRGB(), a), true);
   }
 
   /**
@@ -47,19 +48,7 @@ public class ColorUtil {
    * @return Color object
    */
   public static Color fromHex(String str) {
-    if (str.startsWith("#")) {
-      str = str.substring(1);
-    }
-    if (str.length() == 3) {
-      return new Color(
-          17 * Integer.valueOf(String.valueOf(str.charAt(0)), 16),
-          17 * Integer.valueOf(String.valueOf(str.charAt(1)), 16),
-          17 * Integer.valueOf(String.valueOf(str.charAt(2)), 16));
-    } else if (str.length() == 6) {
-      return Color.decode("0x" + str);
-    } else {
-      throw new IllegalArgumentException("Should be String of 3 or 6 chars length.");
-    }
+    return new Color(PackedColor.fromHex(str));
   }
 
   public static Color fromHex(String str, Color defaultValue) {
@@ -78,7 +67,6 @@ public class ColorUtil {
    * @return dark or not
    */
   public static boolean isDark(final Color c) {
-    // based on perceptional luminosity, see
-    return (1 - (0.299 * c.getRed() + 0.587 * c.getGreen() + 0.114 * c.getBlue()) / 255) >= 0.5;
+    return PackedColor.isDark(c.getRGB());
   }
 }
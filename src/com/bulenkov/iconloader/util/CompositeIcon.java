@@ -0,0 +1,181 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.IconLoader;
+import com.bulenkov.iconloader.RetinaImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An icon composed of other icons, painted from a single flattened raster.
+ * <p/>
+ * The raster is rendered on the first paint and reused until the icon or one of its nested composite icons
+ * is changed, a layer resolves to another icon (see {@link IconLoader#getIconSnapshot(Icon)}, e.g. a reloaded
+ * or patched icon, or a recomputed lazy icon), {@link IconLoader#getGeneration()} changes, or the Retina scale changes.
+ * Layers are only resolved again when {@link IconLoader#getIconStamp()} changes, so a paint is a single blit.
+ * Other icons should not change their appearance on their own, e.g. depend on the component state.
+ *
+ * @author Konstantin Bulenkov
+ */
+public abstract class CompositeIcon implements Icon {
+  private volatile int myModificationCount;
+  private volatile Flattened myFlattened;
+
+  /**
+   * @return composed icons, may contain {@code null}s for empty slots
+   */
+  @NotNull
+  protected abstract Icon[] getIcons();
+
+  /**
+   * Paints the composed icons one by one.
+   */
+  protected abstract void paintIcons(Component c, Graphics g, int x, int y);
+
+  protected final void fireChanged() {
+    myModificationCount++;
+    myFlattened = null;
+  }
+
+  /**
+   * @return a number which changes whenever this icon or any nested composite icon is changed
+   */
+  public long getGeneration() {
+    long generation = myModificationCount;
+    for (Icon icon : getIcons()) {
+      if (icon instanceof CompositeIcon) {
+        generation += ((CompositeIcon)icon).getGeneration();
+      }
+    }
+    return generation;
+  }
+
+  @Override
+  public void paintIcon(Component c, Graphics g, int x, int y) {
+    Image image = getFlattenedImage(c);
+    if (image != null) {
+      UIUtil.drawImage(g, image, x, y, c);
+    }
+  }
+
+  /**
+   * @return the raster the icon is painted from, rendered again if it is out of date, so the same instance
+   * is returned as long as the icon looks the same; {@code null} for an empty icon
+   */
+  @Nullable
+  public Image getFlattenedImage(Component c) {
+    // taken before the layers are resolved, so a load racing with the check is seen by the next paint
+    int stamp = IconLoader.getIconStamp();
+    long generation = getGeneration();
+    int loaderGeneration = IconLoader.getGeneration();
+    int scale = UIUtil.isRetina() ? 2 : 1;
+
+    Flattened flattened = myFlattened;
+    if (flattened != null && flattened.generation == generation && flattened.loaderGeneration == loaderGeneration &&
+        flattened.scale == scale && flattened.stamp != stamp && matchLayers(flattened.layers, 0) == flattened.layers.length) {
+      // icons were loaded or patched, but none of the layers resolves to another icon
+      flattened = new Flattened(flattened.image, flattened.layers, generation, loaderGeneration, scale, stamp);
+      myFlattened = flattened;
+    }
+    if (flattened == null || flattened.generation != generation || flattened.loaderGeneration != loaderGeneration ||
+        flattened.scale != scale || flattened.stamp != stamp) {
+      List<Icon> layers = new ArrayList<Icon>();
+      collectLayers(layers);
+      // the layers may have been loaded just now, the flattened raster paints them as collected
+      stamp = IconLoader.getIconStamp();
+      flattened = new Flattened(flatten(c, scale), layers.toArray(new Icon[layers.size()]), generation, loaderGeneration, scale, stamp);
+      myFlattened = flattened;
+    }
+    return flattened.image;
+  }
+
+  /**
+   * Collects what every leaf layer, including the ones of nested composite icons, currently resolves to.
+   */
+  private void collectLayers(@NotNull List<Icon> layers) {
+    for (Icon icon : getIcons()) {
+      if (icon instanceof CompositeIcon) {
+        ((CompositeIcon)icon).collectLayers(layers);
+      }
+      else {
+        layers.add(icon == null ? null : IconLoader.getIconSnapshot(icon));
+      }
+    }
+  }
+
+  /**
+   * Compares the leaf layers with the ones collected by {@link #collectLayers} without allocating.
+   *
+   * @return the index after the last matched layer, or -1 if a layer differs
+   */
+  private int matchLayers(@NotNull Icon[] layers, int index) {
+    for (Icon icon : getIcons()) {
+      if (icon instanceof CompositeIcon) {
+        index = ((CompositeIcon)icon).matchLayers(layers, index);
+        if (index < 0) return -1;
+      }
+      else {
+        if (index >= layers.length || layers[index] != (icon == null ? null : IconLoader.getIconSnapshot(icon))) return -1;
+        index++;
+      }
+    }
+    return index;
+  }
+
+  private Image flatten(Component c, int scale) {
+    int width = getIconWidth();
+    int height = getIconHeight();
+    if (width <= 0 || height <= 0) return null;
+
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(scale * width, scale * height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.scale(scale, scale);
+      paintIcons(c, g, 0, 0);
+    }
+    finally {
+      g.dispose();
+    }
+    return scale > 1 ? RetinaImage.createFrom(image) : image;
+  }
+
+  private static class Flattened {
+    private final Image image;
+    private final Icon[] layers;
+    private final long generation;
+    private final int loaderGeneration;
+    private final int scale;
+    private final int stamp;
+
+    private Flattened(Image image, Icon[] layers, long generation, int loaderGeneration, int scale, int stamp) {
+      this.image = image;
+      this.layers = layers;
+      this.generation = generation;
+      this.loaderGeneration = loaderGeneration;
+      this.scale = scale;
+      this.stamp = stamp;
+    }
+  }
+}
@@ -28,6 +28,9 @@ import java.util.concurrent.ConcurrentMap;
  * Base class for concurrent strong key:K -> (soft/weak) value:V map
  * Null keys are NOT allowed
  * Null values are NOT allowed
+ * Views returned by {@link #values()} and {@link #entrySet()} are weakly consistent like the views of
+ * {@link ConcurrentHashMap}: they don't copy the map and skip values collected during iteration.
+ * Cleared values are removed by mutating operations, or by {@link ReferenceReclaimer} if it's enabled.
  */
 abstract class ConcurrentRefValueHashMap<K, V> implements ConcurrentMap<K, V> {
   private final ConcurrentMap<K, ValueReference<K, V>> myMap;
@@ -60,6 +63,15 @@ abstract class ConcurrentRefValueHashMap<K, V> implements ConcurrentMap<K, V> {
     V get();
   }
 
+  /**
+   * @return the queue for new value references, shared by all maps when they are reclaimed in background
+   */
+  @NotNull
+  protected ReferenceQueue<? super V> getQueue() {
+    if (ReferenceReclaimer.isEnabled()) return ReferenceReclaimer.getQueue();
+    return myQueue;
+  }
+
   // returns true if some refs were tossed
   boolean processQueue() {
     boolean processed = false;
@@ -68,12 +80,16 @@ abstract class ConcurrentRefValueHashMap<K, V> implements ConcurrentMap<K, V> {
       @SuppressWarnings("unchecked")
       ValueReference<K, V> ref = (ValueReference<K, V>)myQueue.poll();
       if (ref == null) break;
-      myMap.remove(ref.getKey(), ref);
+      reclaim(ref);
       processed = true;
     }
     return processed;
   }
 
+  void reclaim(@NotNull ValueReference<K, V> ref) {
+    myMap.remove(ref.getKey(), ref);
+  }
+
   @Override
   public V get(@NotNull Object key) {
     ValueReference<K, V> ref = myMap.get(key);
@@ -184,51 +200,111 @@ abstract class ConcurrentRefValueHashMap<K, V> implements ConcurrentMap<K, V> {
   @NotNull
   @Override
   public Collection<V> values() {
-    Collection<V> result = new ArrayList<V>();
-    final Collection<ValueReference<K, V>> refs = myMap.values();
-    for (ValueReference<K, V> ref : refs) {
-      final V value = ref.get();
-      if (value != null) {
-        result.add(value);
-      }
-    }
-    return result;
-  }
-
-  @NotNull
-  @Override
-  public Set<Entry<K, V>> entrySet() {
-    final Set<K> keys = keySet();
-    Set<Entry<K, V>> entries = new HashSet<Entry<K, V>>();
-
-    for (final K key : keys) {
-      final V value = get(key);
-      if (value != null) {
-        entries.add(new Entry<K, V>() {
+    return new AbstractCollection<V>() {
+      @NotNull
+      @Override
+      public Iterator<V> iterator() {
+        final Iterator<Entry<K, V>> entries = new EntryIterator();
+        return new Iterator<V>() {
           @Override
-          public K getKey() {
-            return key;
+          public boolean hasNext() {
+            return entries.hasNext();
           }
 
           @Override
-          public V getValue() {
-            return value;
+          public V next() {
+            return entries.next().getValue();
           }
 
           @Override
-          public V setValue(@NotNull V value) {
-            throw new UnsupportedOperationException("setValue is not implemented");
+          public void remove() {
+            entries.remove();
           }
+        };
+      }
 
-          @Override
-          public String toString() {
-            return "(" + getKey() + " : " + getValue() + ")";
-          }
-        });
+      @Override
+      public int size() {
+        return ConcurrentRefValueHashMap.this.size();
+      }
+    };
+  }
+
+  @NotNull
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @NotNull
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        return new EntryIterator();
       }
+
+      @Override
+      public int size() {
+        return ConcurrentRefValueHashMap.this.size();
+      }
+    };
+  }
+
+  private class EntryIterator implements Iterator<Entry<K, V>> {
+    private final Iterator<Entry<K, ValueReference<K, V>>> myRefs = myMap.entrySet().iterator();
+    private Entry<K, V> myNext;
+    private ValueReference<K, V> myNextRef;
+    private ValueReference<K, V> myLastRef;
+
+    @Override
+    public boolean hasNext() {
+      while (myNext == null && myRefs.hasNext()) {
+        Entry<K, ValueReference<K, V>> entry = myRefs.next();
+        final K key = entry.getKey();
+        final ValueReference<K, V> ref = entry.getValue();
+        // the entry holds the value strongly, it can't be collected until the caller is done with it
+        final V value = ref.get();
+        if (value != null) {
+          myNext = new Entry<K, V>() {
+            @Override
+            public K getKey() {
+              return key;
+            }
+
+            @Override
+            public V getValue() {
+              return value;
+            }
+
+            @Override
+            public V setValue(@NotNull V value) {
+              throw new UnsupportedOperationException("setValue is not implemented");
+            }
+
+            @Override
+            public String toString() {
+              return "(" + getKey() + " : " + getValue() + ")";
+            }
+          };
+          myNextRef = ref;
+        }
+      }
+      return myNext != null;
     }
 
-    return entries;
+    @Override
+    public Entry<K, V> next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      Entry<K, V> next = myNext;
+      myLastRef = myNextRef;
+      myNext = null;
+      myNextRef = null;
+      return next;
+    }
+
+    @Override
+    public void remove() {
+      if (myLastRef == null) throw new IllegalStateException();
+      myMap.remove(myLastRef.getKey(), myLastRef);
+      myLastRef = null;
+    }
   }
 
   @Override
@@ -18,7 +18,6 @@ package com.bulenkov.iconloader.util;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.Map;
 
@@ -43,11 +42,18 @@ public final class ConcurrentSoftValueHashMap<K,V> extends ConcurrentRefValueHas
 //    super(initialCapacity, loadFactor, concurrencyLevel, hashingStrategy);
 //  }
 
-  private static class MySoftReference<K, V> extends SoftReference<V> implements ValueReference<K, V> {
+  private static class MySoftReference<K, V> extends SoftReference<V> implements ValueReference<K, V>, ReferenceReclaimer.Reclaimable {
     private final K key;
-    private MySoftReference(@NotNull K key, @NotNull V referent, @NotNull ReferenceQueue<V> q) {
-      super(referent, q);
+    private final ConcurrentSoftValueHashMap<K, V> map;
+    private MySoftReference(@NotNull K key, @NotNull V referent, @NotNull ConcurrentSoftValueHashMap<K, V> map) {
+      super(referent, map.getQueue());
       this.key = key;
+      this.map = map;
+    }
+
+    @Override
+    public void reclaim() {
+      map.reclaim(this);
     }
 
     @NotNull
@@ -74,6 +80,6 @@ public final class ConcurrentSoftValueHashMap<K,V> extends ConcurrentRefValueHas
   @NotNull
   @Override
   protected ValueReference<K, V> createValueReference(@NotNull K key, @NotNull V value) {
-    return new MySoftReference<K,V>(key, value, myQueue);
+    return new MySoftReference<K,V>(key, value, this);
   }
 }
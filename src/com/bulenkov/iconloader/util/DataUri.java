@@ -0,0 +1,227 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Decoded {@code data:} URI. The payload is located by a single scan of the header and Base64 is decoded
+ * straight from the source {@link CharSequence} into the resulting buffer, without a regex or intermediate strings.
+ * Two data URIs are equal if their media types and decoded contents are.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class DataUri {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final String BASE64 = ";base64";
+  private static final byte[] DECODE_TABLE = new byte[128];
+
+  static {
+    Arrays.fill(DECODE_TABLE, (byte)-1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      DECODE_TABLE[alphabet.charAt(i)] = (byte)i;
+    }
+    // URL-safe alphabet
+    DECODE_TABLE['-'] = 62;
+    DECODE_TABLE['_'] = 63;
+  }
+
+  @NotNull private final String myMimeType;
+  @NotNull private final byte[] myData;
+  private final int myLength;
+  private final long myHash;
+
+  private DataUri(@NotNull String mimeType, @NotNull byte[] data, int length) {
+    myMimeType = mimeType;
+    myData = data;
+    myLength = length;
+    myHash = hash(data, length);
+  }
+
+  /**
+   * @param uri data URI, may be quoted
+   * @return the decoded URI or {@code null} if it isn't a well-formed data URI
+   */
+  @Nullable
+  public static DataUri parse(@NotNull CharSequence uri) {
+    int start = 0;
+    int end = uri.length();
+    if (end > 0 && (uri.charAt(0) == '"' || uri.charAt(0) == '\'')) start++;
+    if (end > start && (uri.charAt(end - 1) == '"' || uri.charAt(end - 1) == '\'')) end--;
+    if (!regionMatches(uri, start, "data:")) return null;
+    start += "data:".length();
+
+    int comma = -1;
+    for (int i = start; i < end; i++) {
+      if (uri.charAt(i) == ',') {
+        comma = i;
+        break;
+      }
+    }
+    if (comma < 0) return null;
+
+    boolean base64 = comma - start >= BASE64.length() && regionMatches(uri, comma - BASE64.length(), BASE64);
+    int headerEnd = base64 ? comma - BASE64.length() : comma;
+    int semicolon = start;
+    while (semicolon < headerEnd && uri.charAt(semicolon) != ';') semicolon++;
+    String mimeType = semicolon == start ? "text/plain" : uri.subSequence(start, semicolon).toString().trim().toLowerCase();
+
+    if (!base64) {
+      ByteBuffer bytes = UTF8.encode(CharBuffer.wrap(uri, comma + 1, end));
+      return new DataUri(mimeType, bytes.array(), bytes.limit());
+    }
+    byte[] data = new byte[(end - comma - 1) / 4 * 3 + 3];
+    int length = decodeBase64(uri, comma + 1, end, data);
+    return length < 0 ? null : new DataUri(mimeType, data, length);
+  }
+
+  /**
+   * Decodes Base64 (standard or URL-safe alphabet) ignoring whitespace; padding is optional.
+   *
+   * @return number of decoded bytes or -1 if the input is malformed
+   */
+  static int decodeBase64(@NotNull CharSequence source, int start, int end, @NotNull byte[] target) {
+    int bits = 0;
+    int count = 0;
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c <= ' ') continue;
+      if (c == '=') {
+        // only padding and whitespace may follow
+        for (i++; i < end; i++) {
+          char next = source.charAt(i);
+          if (next != '=' && next > ' ') return -1;
+        }
+        break;
+      }
+      int value = c < 128 ? DECODE_TABLE[c] : -1;
+      if (value < 0) return -1;
+      bits = bits << 6 | value;
+      if (++count == 4) {
+        target[length++] = (byte)(bits >> 16);
+        target[length++] = (byte)(bits >> 8);
+        target[length++] = (byte)bits;
+        bits = 0;
+        count = 0;
+      }
+    }
+    if (count == 1) return -1;
+    if (count == 2) {
+      target[length++] = (byte)(bits >> 4);
+    }
+    else if (count == 3) {
+      target[length++] = (byte)(bits >> 10);
+      target[length++] = (byte)(bits >> 2);
+    }
+    return length;
+  }
+
+  @NotNull
+  public String getMimeType() {
+    return myMimeType;
+  }
+
+  public boolean isSvg() {
+    return "image/svg+xml".equals(myMimeType);
+  }
+
+  /**
+   * @return read-only view of the decoded content
+   */
+  @NotNull
+  public ByteBuffer getData() {
+    return ByteBuffer.wrap(myData, 0, myLength).asReadOnlyBuffer();
+  }
+
+  @NotNull
+  public InputStream openStream() {
+    return new ByteArrayInputStream(myData, 0, myLength);
+  }
+
+  @NotNull
+  public byte[] toByteArray() {
+    return myLength == myData.length ? myData.clone() : Arrays.copyOf(myData, myLength);
+  }
+
+  /**
+   * Exposes the decoded bytes without copying, valid up to {@link #getLength()}. Must not be modified.
+   */
+  @NotNull
+  byte[] getInternalBuffer() {
+    return myData;
+  }
+
+  public int getLength() {
+    return myLength;
+  }
+
+  /**
+   * @return 64-bit FNV-1a hash of the decoded content
+   */
+  public long getContentHash() {
+    return myHash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof DataUri)) return false;
+    DataUri uri = (DataUri)o;
+    if (myHash != uri.myHash || myLength != uri.myLength || !myMimeType.equals(uri.myMimeType)) return false;
+    for (int i = 0; i < myLength; i++) {
+      if (myData[i] != uri.myData[i]) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int)(myHash ^ myHash >>> 32);
+  }
+
+  @Override
+  public String toString() {
+    return "data:" + myMimeType + " (" + myLength + " bytes)";
+  }
+
+  private static boolean regionMatches(@NotNull CharSequence text, int offset, @NotNull String prefix) {
+    if (offset < 0 || text.length() - offset < prefix.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (Character.toLowerCase(text.charAt(offset + i)) != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static long hash(@NotNull byte[] data, int length) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < length; i++) {
+      hash ^= data[i] & 0xFF;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+}
@@ -18,27 +18,45 @@ package com.bulenkov.iconloader.util;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Icons of up to {@value #MAX_CACHED_SIZE}x{@value #MAX_CACHED_SIZE} returned by {@code create} methods are interned:
+ * the lookup is lock-free and allocates nothing once the size was requested.
+ *
  * @author Konstantin Bulenkov
  */
 public class EmptyIcon implements Icon {
-  private static final Map<Integer, Icon> cache = new HashMap<Integer, Icon>();
+  private static final int MAX_CACHED_SIZE = 128;
+  // slot width * (MAX_CACHED_SIZE + 1) + height, filled on demand
+  private static final AtomicReferenceArray<EmptyIcon> cache = new AtomicReferenceArray<EmptyIcon>((MAX_CACHED_SIZE + 1) * (MAX_CACHED_SIZE + 1));
   private final int width;
   private final int height;
 
   public static Icon create(int size) {
-    Icon icon = cache.get(size);
-    if (icon == null && size < 129) {
-      cache.put(size, icon = new EmptyIcon(size, size));
-    }
-    return icon == null ? new EmptyIcon(size, size) : icon;
+    return create(size, size);
   }
 
   public static Icon create(int width, int height) {
-    return width == height ? create(width) : new EmptyIcon(width, height);
+    if (width < 0 || height < 0 || width > MAX_CACHED_SIZE || height > MAX_CACHED_SIZE) {
+      return new EmptyIcon(width, height);
+    }
+    int slot = width * (MAX_CACHED_SIZE + 1) + height;
+    EmptyIcon icon = cache.get(slot);
+    if (icon == null) {
+      icon = new EmptyIcon(width, height);
+      if (!cache.compareAndSet(slot, null, icon)) {
+        icon = cache.get(slot);
+      }
+    }
+    return icon;
+  }
+
+  /**
+   * @return interned icon of the given size scaled with {@link JBUI#scale(int)}
+   */
+  public static Icon createScaled(int width, int height) {
+    return create(JBUI.scale(width), JBUI.scale(height));
   }
 
   public static Icon create(Icon base) {
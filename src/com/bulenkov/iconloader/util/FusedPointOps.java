@@ -0,0 +1,204 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.*;
+
+/**
+ * Applies a run of point ops in a single pass over the raster, for {@link Scalr#apply(BufferedImage, BufferedImageOp...)}.
+ * <p/>
+ * {@link RescaleOp}s and {@link LookupOp}s map every channel on its own, so any chain of them is one lookup table
+ * per channel. The table is built by running the ops themselves over a 256-pixel probe image, so the fused result
+ * is exactly what the ops would produce one by one. {@link Scalr#OP_GRAYSCALE} mixes the channels: a run may contain
+ * one of it, computed as the sRGB encoded luminance between the tables of the ops before and after it, which matches
+ * the ICC conversion within one level.
+ * <p/>
+ * Enabled by default, use {@code -Dicons.scalr.fused=false} or {@link #setEnabled(boolean)} to apply ops one by one.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class FusedPointOps {
+  private static volatile boolean ourEnabled = Registry.is("icons.scalr.fused", true);
+
+  private static final int LUMA_BITS = 16;
+
+  private FusedPointOps() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  /**
+   * @return the end (exclusive) of the run of fusable ops starting at {@code start}, or {@code start} if there is no
+   * run of at least two ops to fuse; {@code null} ops inside the run are skipped
+   */
+  static int findRun(@NotNull BufferedImageOp[] ops, int start) {
+    if (!ourEnabled) return start;
+    int count = 0;
+    boolean gray = false;
+    int end = start;
+    for (int i = start; i < ops.length; i++) {
+      BufferedImageOp op = ops[i];
+      if (op == null) continue;
+      if (op == Scalr.OP_GRAYSCALE) {
+        if (gray) break;
+        gray = true;
+      }
+      else if (!(op instanceof RescaleOp) && !(op instanceof LookupOp)) {
+        break;
+      }
+      count++;
+      end = i + 1;
+    }
+    return count > 1 ? end : start;
+  }
+
+  /**
+   * Applies {@code ops[start, end)} found by {@link #findRun} to an {@code INT_RGB} or {@code INT_ARGB} image.
+   */
+  @NotNull
+  static BufferedImage apply(@NotNull BufferedImage src, @NotNull BufferedImageOp[] ops, int start, int end) {
+    int gray = -1;
+    for (int i = start; i < end; i++) {
+      if (ops[i] == Scalr.OP_GRAYSCALE) gray = i;
+    }
+    int[][] before = createTable(src, ops, start, gray < 0 ? end : gray);
+    int[][] after = gray < 0 ? null : createTable(src, ops, gray + 1, end);
+
+    int width = src.getWidth();
+    int height = src.getHeight();
+    BufferedImage dest = Scalr.createOptimalImage(src, width, height);
+    WritableRaster in = src.getRaster();
+    WritableRaster out = dest.getRaster();
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      in.getDataElements(0, y, width, 1, row);
+      if (after == null) {
+        map(row, before);
+      }
+      else {
+        mapGray(row, before, after);
+      }
+      out.setDataElements(0, y, width, 1, row);
+    }
+    return dest;
+  }
+
+  private static void map(@NotNull int[] row, @NotNull int[][] table) {
+    int[] a = table[0];
+    int[] r = table[1];
+    int[] g = table[2];
+    int[] b = table[3];
+    for (int i = 0; i < row.length; i++) {
+      int p = row[i];
+      row[i] = a[p >>> 24] | r[(p >> 16) & 0xFF] | g[(p >> 8) & 0xFF] | b[p & 0xFF];
+    }
+  }
+
+  private static void mapGray(@NotNull int[] row, @NotNull int[][] before, @NotNull int[][] after) {
+    int[] a = before[0];
+    int[] r = before[1];
+    int[] g = before[2];
+    int[] b = before[3];
+    int[] alpha = after[0];
+    int[] red = after[1];
+    int[] green = after[2];
+    int[] blue = after[3];
+    int[] lumaR = Luma.RED;
+    int[] lumaG = Luma.GREEN;
+    int[] lumaB = Luma.BLUE;
+    byte[] encode = Luma.ENCODE;
+    for (int i = 0; i < row.length; i++) {
+      int p = row[i];
+      int luma = lumaR[r[(p >> 16) & 0xFF] >>> 16] + lumaG[g[(p >> 8) & 0xFF] >>> 8] + lumaB[b[p & 0xFF]];
+      int v = encode[luma] & 0xFF;
+      row[i] = alpha[a[p >>> 24] >>> 24] | red[v] | green[v] | blue[v];
+    }
+  }
+
+  /**
+   * @return per-channel tables of {@code ops[start, end)} indexed by the channel value and holding the result
+   * already shifted to its position in the pixel
+   */
+  @NotNull
+  private static int[][] createTable(@NotNull BufferedImage src, @NotNull BufferedImageOp[] ops, int start, int end) {
+    int type = src.getType();
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage probe = new BufferedImage(256, 1, type);
+    int[] pixels = new int[256];
+    for (int v = 0; v < 256; v++) {
+      pixels[v] = v << 24 | v << 16 | v << 8 | v;
+    }
+    probe.getRaster().setDataElements(0, 0, 256, 1, pixels);
+
+    for (int i = start; i < end; i++) {
+      BufferedImageOp op = ops[i];
+      if (op == null) continue;
+      probe = op.filter(probe, Scalr.createOptimalImage(probe, 256, 1));
+    }
+    probe.getRaster().getDataElements(0, 0, 256, 1, pixels);
+
+    int[][] table = new int[4][256];
+    for (int v = 0; v < 256; v++) {
+      int p = pixels[v];
+      // INT_RGB keeps no alpha, it is read back as whatever the source had
+      table[0][v] = type == BufferedImage.TYPE_INT_ARGB ? p & 0xFF000000 : v << 24;
+      table[1][v] = p & 0xFF0000;
+      table[2][v] = p & 0xFF00;
+      table[3][v] = p & 0xFF;
+    }
+    return table;
+  }
+
+  /**
+   * Linear luminance of sRGB channels, with the weights of the D50 adapted sRGB profile used by the ICC conversion.
+   */
+  private static class Luma {
+    private static final int[] RED = weights(0.2225);
+    private static final int[] GREEN = weights(0.7169);
+    private static final int[] BLUE = weights(0.0606);
+    private static final byte[] ENCODE = encode();
+
+    private static int[] weights(double weight) {
+      int[] table = new int[256];
+      for (int v = 0; v < 256; v++) {
+        double c = v / 255.0;
+        double linear = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        table[v] = (int)Math.round(weight * linear * ((1 << LUMA_BITS) - 1));
+      }
+      return table;
+    }
+
+    private static byte[] encode() {
+      // the weights sum up to 1, but rounding can add a few units
+      byte[] table = new byte[(1 << LUMA_BITS) + 4];
+      for (int luma = 0; luma < table.length; luma++) {
+        double y = Math.min(1, luma / (double)((1 << LUMA_BITS) - 1));
+        double c = y <= 0.0031308 ? 12.92 * y : 1.055 * Math.pow(y, 1 / 2.4) - 0.055;
+        table[luma] = (byte)Math.round(c * 255);
+      }
+      return table;
+    }
+  }
+}
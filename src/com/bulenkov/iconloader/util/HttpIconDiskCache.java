@@ -0,0 +1,231 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Disk-backed cache of remote icons: the bytes and their HTTP validators ({@code ETag}, {@code Last-Modified})
+ * are kept in one file per URL under the cache directory. The directory is bounded by size, the least recently
+ * used entries are deleted first; recency survives restarts as the files' modification time.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class HttpIconDiskCache {
+  private static final int VERSION = 1;
+  private static final String SUFFIX = ".icon";
+
+  private final File myDirectory;
+  private final long myMaxSize;
+  // entry file name -> size, in access order
+  private final LinkedHashMap<String, Long> myIndex = new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long mySize;
+
+  public HttpIconDiskCache(@NotNull File directory, long maxSize) {
+    myDirectory = directory;
+    myMaxSize = maxSize;
+    loadIndex();
+  }
+
+  /**
+   * @return the cache configured with {@code -Dicons.remote.cache.dir} and {@code -Dicons.remote.cache.size} (bytes),
+   *         or {@code null} if no directory is configured
+   */
+  @Nullable
+  public static HttpIconDiskCache createDefault() {
+    String directory = System.getProperty("icons.remote.cache.dir");
+    if (directory == null || directory.length() == 0) return null;
+    return new HttpIconDiskCache(new File(directory), Long.getLong("icons.remote.cache.size", 50L << 20));
+  }
+
+  public static final class Entry {
+    @NotNull public final byte[] bytes;
+    @Nullable public final String eTag;
+    @Nullable public final String lastModified;
+
+    public Entry(@NotNull byte[] bytes, @Nullable String eTag, @Nullable String lastModified) {
+      this.bytes = bytes;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+  }
+
+  @Nullable
+  public synchronized Entry get(@NotNull String url) {
+    String name = getFileName(url);
+    if (myIndex.get(name) == null) return null;
+
+    File file = new File(myDirectory, name);
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != VERSION || !url.equals(in.readUTF())) {
+        throw new IOException("Stale or foreign cache entry");
+      }
+      String eTag = readNullableUTF(in);
+      String lastModified = readNullableUTF(in);
+      int length = in.readInt();
+      // a corrupted length must not make us allocate more than the file can hold
+      if (length < 0 || length > file.length()) throw new IOException("Corrupted cache entry");
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(bytes, eTag, lastModified);
+    }
+    catch (IOException e) {
+      remove(name);
+      return null;
+    }
+    finally {
+      close(in);
+    }
+  }
+
+  public synchronized void put(@NotNull String url, @NotNull Entry entry) {
+    if (!myDirectory.isDirectory() && !myDirectory.mkdirs()) return;
+    String name = getFileName(url);
+    File file = new File(myDirectory, name);
+    File temp = new File(myDirectory, name + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeInt(VERSION);
+      out.writeUTF(url);
+      writeNullableUTF(out, entry.eTag);
+      writeNullableUTF(out, entry.lastModified);
+      out.writeInt(entry.bytes.length);
+      out.write(entry.bytes);
+      out.close();
+      out = null;
+      remove(name);
+      if (!temp.renameTo(file)) throw new IOException("Can't rename " + temp);
+    }
+    catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      temp.delete();
+      return;
+    }
+    finally {
+      close(out);
+    }
+    long size = file.length();
+    myIndex.put(name, size);
+    mySize += size;
+    evict();
+  }
+
+  public synchronized long getSize() {
+    return mySize;
+  }
+
+  public synchronized void clear() {
+    for (String name : new ArrayList<String>(myIndex.keySet())) {
+      remove(name);
+    }
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> iterator = myIndex.entrySet().iterator();
+    while (mySize > myMaxSize && iterator.hasNext()) {
+      Map.Entry<String, Long> eldest = iterator.next();
+      iterator.remove();
+      mySize -= eldest.getValue();
+      //noinspection ResultOfMethodCallIgnored
+      new File(myDirectory, eldest.getKey()).delete();
+    }
+  }
+
+  private void remove(@NotNull String name) {
+    Long size = myIndex.remove(name);
+    if (size != null) mySize -= size;
+    //noinspection ResultOfMethodCallIgnored
+    new File(myDirectory, name).delete();
+  }
+
+  private void loadIndex() {
+    File[] files = myDirectory.listFiles();
+    if (files == null) return;
+    List<File> entries = new ArrayList<File>();
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        entries.add(file);
+      }
+      else if (file.getName().endsWith(SUFFIX + ".tmp")) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+    Collections.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        long t1 = f1.lastModified();
+        long t2 = f2.lastModified();
+        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+      }
+    });
+    for (File file : entries) {
+      long size = file.length();
+      myIndex.put(file.getName(), size);
+      mySize += size;
+    }
+    evict();
+  }
+
+  @NotNull
+  private static String getFileName(@NotNull String url) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+      StringBuilder name = new StringBuilder(2 * digest.length + SUFFIX.length());
+      for (byte b : digest) {
+        name.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return name.append(SUFFIX).toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Nullable
+  private static String readNullableUTF(@NotNull DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullableUTF(@NotNull DataOutputStream out, @Nullable String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) out.writeUTF(value);
+  }
+
+  private static void close(@Nullable Closeable closeable) {
+    if (closeable == null) return;
+    try {
+      closeable.close();
+    }
+    catch (IOException ignore) {
+    }
+  }
+}
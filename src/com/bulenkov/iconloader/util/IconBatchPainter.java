@@ -0,0 +1,186 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.IconLoader;
+import com.bulenkov.iconloader.IconLoaderStats;
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paints many icons to one {@link Graphics2D} at once, e.g. all rows of a tree, list or table.
+ * <ul>
+ * <li>Each distinct icon is resolved once per batch, see {@link IconLoader#getIconSnapshot(Icon)}.</li>
+ * <li>Icons entirely outside the clip are skipped.</li>
+ * <li>Image icons are grouped by their backing image, and each group is drawn with consecutive
+ * {@code drawImage} calls without touching the graphics state or taking the icon monitor.</li>
+ * <li>Other icons are painted with {@link Icon#paintIcon} after the groups, in their original order.</li>
+ * </ul>
+ * Since icons are reordered, overlapping icons should be painted with separate batches.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class IconBatchPainter {
+  private IconBatchPainter() {
+  }
+
+  /**
+   * @return number of icons painted
+   */
+  public static int paintIcons(@Nullable Component c, @NotNull Graphics2D g,
+                               @NotNull Icon[] icons, @NotNull int[] xs, @NotNull int[] ys) {
+    return paintIcons(c, g, icons, xs, ys, 0, icons.length);
+  }
+
+  /**
+   * Paints {@code icons[i]} at {@code (xs[i], ys[i])} for {@code i} in {@code [offset, offset + length)};
+   * {@code null} icons are ignored.
+   *
+   * @return number of icons painted
+   */
+  public static int paintIcons(@Nullable Component c, @NotNull Graphics2D g,
+                               @NotNull Icon[] icons, @NotNull int[] xs, @NotNull int[] ys, int offset, int length) {
+    int end = offset + length;
+    if (offset < 0 || length < 0 || end > icons.length || end > xs.length || end > ys.length) {
+      throw new IllegalArgumentException("offset=" + offset + ", length=" + length + ", icons=" + icons.length +
+                                         ", xs=" + xs.length + ", ys=" + ys.length);
+    }
+
+    Rectangle clip = g.getClipBounds();
+    Map<Icon, Icon> snapshots = new IdentityHashMap<Icon, Icon>();
+    Map<Image, Batch> batches = new IdentityHashMap<Image, Batch>();
+    List<Batch> order = new ArrayList<Batch>();
+    Batch others = new Batch(null, 0, 0);
+
+    for (int i = offset; i < end; i++) {
+      Icon icon = icons[i];
+      if (icon == null) continue;
+
+      Icon snapshot = snapshots.get(icon);
+      if (snapshot == null) {
+        snapshot = IconLoader.getIconSnapshot(icon);
+        snapshots.put(icon, snapshot);
+      }
+      if (clip != null && !isVisible(snapshot, xs[i], ys[i], clip)) continue;
+
+      Image image = getImage(snapshot);
+      if (image == null) {
+        others.add(i);
+        continue;
+      }
+      Batch batch = batches.get(image);
+      if (batch == null) {
+        batch = createBatch(image, c);
+        batches.put(image, batch);
+        order.add(batch);
+      }
+      batch.add(i);
+    }
+
+    int painted = 0;
+    for (Batch batch : order) {
+      Image raster = batch.myRaster;
+      for (int j = 0; j < batch.mySize; j++) {
+        int i = batch.myIndices[j];
+        if (batch.myWidth < 0) {
+          g.drawImage(raster, xs[i], ys[i], c);
+        }
+        else {
+          int x = xs[i];
+          int y = ys[i];
+          g.drawImage(raster, x, y, x + batch.myWidth, y + batch.myHeight, 0, 0, 2 * batch.myWidth, 2 * batch.myHeight, c);
+        }
+      }
+      painted += batch.mySize;
+    }
+    for (int j = 0; j < others.mySize; j++) {
+      int i = others.myIndices[j];
+      snapshots.get(icons[i]).paintIcon(c, g, xs[i], ys[i]);
+    }
+    painted += others.mySize;
+
+    if (painted > 0) IconLoaderStats.firstPaint();
+    return painted;
+  }
+
+  private static boolean isVisible(@NotNull Icon icon, int x, int y, @NotNull Rectangle clip) {
+    return x < clip.x + clip.width && y < clip.y + clip.height &&
+           x + icon.getIconWidth() > clip.x && y + icon.getIconHeight() > clip.y;
+  }
+
+  /**
+   * @return the image painted by the icon as is, or {@code null} if the icon has to paint itself
+   */
+  @Nullable
+  private static Image getImage(@NotNull Icon icon) {
+    // subclasses may paint anything, only the classes known to paint their image unchanged are drawn directly
+    Class<?> aClass = icon.getClass();
+    if (aClass != ImageIcon.class && aClass != JBImageIcon.class && aClass != OffHeapIcon.class) return null;
+    if (aClass == JBImageIcon.class && AcceleratedSurface.isEnabled()) return null;
+
+    ImageIcon imageIcon = (ImageIcon)icon;
+    // animated images notify their own observer
+    if (imageIcon.getImageObserver() != null) return null;
+    return imageIcon.getImage();
+  }
+
+  @NotNull
+  private static Batch createBatch(@NotNull Image image, @Nullable Component c) {
+    if (image instanceof JBHiDPIScaledImage) {
+      // drawn at half scale into the logical size of the wrapper, like UIUtil.drawImage does
+      Image delegate = ((JBHiDPIScaledImage)image).getDelegate();
+      if (delegate != null) {
+        return new Batch(delegate, image.getWidth(c), image.getHeight(c));
+      }
+      // the wrapper is its own double-sized raster
+      return new Batch(image, image.getWidth(c) / 2, image.getHeight(c) / 2);
+    }
+    return new Batch(image, -1, -1);
+  }
+
+  private static class Batch {
+    private final Image myRaster;
+    // the logical size of a HiDPI raster, or -1 to draw the raster at its own size
+    private final int myWidth;
+    private final int myHeight;
+    private int[] myIndices = new int[4];
+    private int mySize;
+
+    private Batch(Image raster, int width, int height) {
+      myRaster = raster;
+      myWidth = width;
+      myHeight = height;
+    }
+
+    private void add(int index) {
+      if (mySize == myIndices.length) {
+        int[] indices = new int[mySize * 2];
+        System.arraycopy(myIndices, 0, indices, 0, mySize);
+        myIndices = indices;
+      }
+      myIndices[mySize++] = index;
+    }
+  }
+}
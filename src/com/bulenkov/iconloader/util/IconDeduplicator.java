@@ -0,0 +1,226 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.IconLoaderStats;
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares one icon between all loaded icons with identical pixels, e.g. the same image shipped under different
+ * paths or a {@code _dark} variant equal to the light one. Icons are matched by a hash of their ARGB pixels
+ * and their logical and raw sizes; a match is confirmed by comparing the pixels, so it is never wrong.
+ * Fully transparent pixels are considered equal whatever their color components.
+ * <p/>
+ * Pixels are read row by row into a single buffer, right from the off-heap storage for an {@link OffHeapIcon},
+ * but every loaded icon is still hashed once, so it only pays off for icon sets with many duplicates.
+ * Disabled by default, use {@code -Dicons.dedup=true} or {@link #setEnabled(boolean)} to turn it on.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class IconDeduplicator {
+  private static volatile boolean ourEnabled = Registry.is("icons.dedup");
+  private static final ConcurrentMap<ContentKey, ImageIcon> ourIcons = new ConcurrentWeakValueHashMap<ContentKey, ImageIcon>();
+
+  private IconDeduplicator() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+    if (!enabled) ourIcons.clear();
+  }
+
+  /**
+   * @return an already loaded icon with the same pixels, or {@code icon} itself
+   */
+  @NotNull
+  public static ImageIcon intern(@NotNull ImageIcon icon) {
+    if (!ourEnabled) return icon;
+    Pixels pixels = Pixels.of(icon);
+    if (pixels == null) return icon;
+    int width = pixels.getWidth();
+    int height = pixels.getHeight();
+
+    int[] row = new int[width];
+    ContentKey key = new ContentKey(hash(pixels, row), width, height, icon.getIconWidth(), icon.getIconHeight());
+    ImageIcon shared = ourIcons.putIfAbsent(key, icon);
+    if (shared == null || shared == icon) {
+      IconLoaderStats.increment(Counter.DEDUP_MISS);
+      return icon;
+    }
+    Pixels sharedPixels = Pixels.of(shared);
+    if (sharedPixels == null || !equals(pixels, sharedPixels, row, new int[width])) {
+      // a hash collision, keep the icon unshared
+      IconLoaderStats.increment(Counter.DEDUP_MISS);
+      return icon;
+    }
+    IconLoaderStats.increment(Counter.DEDUP_HIT);
+    IconLoaderStats.add(Counter.DEDUP_BYTES_SAVED, 4L * width * height);
+    return shared;
+  }
+
+  private static long hash(@NotNull Pixels pixels, @NotNull int[] row) {
+    long hash = 0xCBF29CE484222325L;
+    for (int y = 0; y < pixels.getHeight(); y++) {
+      pixels.getRow(y, row);
+      for (int pixel : row) {
+        hash = (hash ^ pixel) * 0x100000001B3L;
+        hash ^= hash >>> 29;
+      }
+    }
+    return hash;
+  }
+
+  private static boolean equals(@NotNull Pixels pixels1, @NotNull Pixels pixels2, @NotNull int[] row1, @NotNull int[] row2) {
+    if (pixels1.getWidth() != pixels2.getWidth() || pixels1.getHeight() != pixels2.getHeight()) return false;
+    for (int y = 0; y < pixels1.getHeight(); y++) {
+      pixels1.getRow(y, row1);
+      pixels2.getRow(y, row2);
+      if (!Arrays.equals(row1, row2)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Raw ARGB pixels of an icon, read row by row.
+   */
+  private abstract static class Pixels {
+    @Nullable
+    static Pixels of(@NotNull ImageIcon icon) {
+      if (icon instanceof OffHeapIcon) {
+        return new OffHeapPixels((OffHeapIcon)icon);
+      }
+      Image image = icon.getImage();
+      if (image == null) return null;
+      if (image instanceof JBHiDPIScaledImage && ((JBHiDPIScaledImage)image).getDelegate() != null) {
+        image = ((JBHiDPIScaledImage)image).getDelegate();
+      }
+      BufferedImage raster = ImageUtil.toBufferedImage(image);
+      if (raster.getWidth() <= 0 || raster.getHeight() <= 0) return null;
+      return new RasterPixels(raster);
+    }
+
+    abstract int getWidth();
+
+    abstract int getHeight();
+
+    /**
+     * Reads a row of pixels with fully transparent pixels made equal.
+     */
+    final void getRow(int y, @NotNull int[] row) {
+      readRow(y, row);
+      for (int i = 0; i < row.length; i++) {
+        if (row[i] >>> 24 == 0) row[i] = 0;
+      }
+    }
+
+    protected abstract void readRow(int y, @NotNull int[] row);
+  }
+
+  private static final class RasterPixels extends Pixels {
+    private final BufferedImage myImage;
+
+    private RasterPixels(@NotNull BufferedImage image) {
+      myImage = image;
+    }
+
+    @Override
+    int getWidth() {
+      return myImage.getWidth();
+    }
+
+    @Override
+    int getHeight() {
+      return myImage.getHeight();
+    }
+
+    @Override
+    protected void readRow(int y, @NotNull int[] row) {
+      if (myImage.getType() == BufferedImage.TYPE_INT_ARGB) {
+        myImage.getRaster().getDataElements(0, y, row.length, 1, row);
+      }
+      else {
+        myImage.getRGB(0, y, row.length, 1, row, 0, row.length);
+      }
+    }
+  }
+
+  private static final class OffHeapPixels extends Pixels {
+    private final OffHeapIcon myIcon;
+
+    private OffHeapPixels(@NotNull OffHeapIcon icon) {
+      myIcon = icon;
+    }
+
+    @Override
+    int getWidth() {
+      return myIcon.getRawWidth();
+    }
+
+    @Override
+    int getHeight() {
+      return myIcon.getRawHeight();
+    }
+
+    @Override
+    protected void readRow(int y, @NotNull int[] row) {
+      myIcon.getRow(y, row);
+    }
+  }
+
+  private static final class ContentKey {
+    private final long myHash;
+    private final int myRawWidth;
+    private final int myRawHeight;
+    private final int myWidth;
+    private final int myHeight;
+
+    private ContentKey(long hash, int rawWidth, int rawHeight, int width, int height) {
+      myHash = hash;
+      myRawWidth = rawWidth;
+      myRawHeight = rawHeight;
+      myWidth = width;
+      myHeight = height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ContentKey)) return false;
+      ContentKey key = (ContentKey)o;
+      return myHash == key.myHash && myRawWidth == key.myRawWidth && myRawHeight == key.myRawHeight &&
+             myWidth == key.myWidth && myHeight == key.myHeight;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int)(myHash ^ (myHash >>> 32));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * JDK Flight Recorder events for the icon pipeline phases.
+ * <p/>
+ * {@link #begin(Kind)} returns {@code null} when the JVM has no Flight Recorder or when the event
+ * is not enabled in any running recording, so nothing is allocated while recording is off.
+ * The thread an event belongs to is recorded by JFR itself.
+ * <p/>
+ * This class and {@link IconEvent} don't reference {@code jdk.jfr}, so they can be linked from the call sites
+ * on any runtime: the events themselves live in {@link JfrIconEvents}, loaded only once JFR is known to be available.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class IconEvents {
+  public enum Kind {LOAD, DECODE, CONVERT, SCALE, DISABLED}
+
+  private static final boolean ourAvailable = isAvailable();
+
+  private IconEvents() { }
+
+  @Nullable
+  public static IconEvent begin(@NotNull Kind kind) {
+    return ourAvailable ? JfrIconEvents.begin(kind) : null;
+  }
+
+  /**
+   * @param bytes encoded bytes for {@link Kind#LOAD} and {@link Kind#DECODE}, raster bytes of the result otherwise
+   */
+  public static void end(@Nullable IconEvent event, @Nullable String path, @Nullable String variant, long bytes, int width, int height) {
+    if (event == null) return;
+    event.end(path, variant, bytes, width, height);
+  }
+
+  private static boolean isAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      // initializes the event prototypes, which fails if the events can't be registered
+      JfrIconEvents.begin(Kind.LOAD);
+      return true;
+    }
+    catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /**
+   * A started event, see {@link #end}.
+   */
+  public interface IconEvent {
+    void end(@Nullable String path, @Nullable String variant, long bytes, int width, int height);
+  }
+}
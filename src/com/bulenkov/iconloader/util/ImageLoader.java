@@ -17,7 +17,12 @@
 package com.bulenkov.iconloader.util;
 
 import com.bulenkov.iconloader.IconLoader;
+import com.bulenkov.iconloader.IconLoaderStats;
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.IconLoaderStats.Phase;
 import com.bulenkov.iconloader.RetinaImage;
+import com.bulenkov.iconloader.util.IconEvents.IconEvent;
+import com.bulenkov.iconloader.util.IconEvents.Kind;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,14 +30,15 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.ImageFilter;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.*;
 
 /**
  * @author Konstantin Bulenkov
@@ -40,18 +46,20 @@ import java.util.concurrent.ConcurrentMap;
 public class ImageLoader implements Serializable {
 //  private static final Log LOG = Logger.getLogger("#com.intellij.util.ImageLoader");
 
-  private static final ConcurrentMap<String, Image> ourCache = new ConcurrentSoftValueHashMap<String, Image>();
+  private static final SoftLRUCache<String, Image> ourCache = new SoftLRUCache<String, Image>();
+  // decodes in progress, concurrent requests for the same variant wait for the first one
+  private static final ConcurrentMap<ImageDesc, FutureTask<Image>> ourLoads = new ConcurrentHashMap<ImageDesc, FutureTask<Image>>();
 
   private static class ImageDesc {
     public enum Type {
       PNG,
 
-//      SVG {
-//        @Override
-//        public Image load(URL url, InputStream is, float scale) throws IOException {
-//          return SVGLoader.load(url, is, scale);
-//        }
-//      },
+      SVG {
+        @Override
+        public Image load(URL url, InputStream is, float scale) throws IOException {
+          return SVGLoader.load(url, is, scale);
+        }
+      },
 
       UNDEFINED;
 
@@ -80,6 +88,41 @@ public class ImageLoader implements Serializable {
 
     @Nullable
     public Image load() throws IOException {
+      FutureTask<Image> task = new FutureTask<Image>(new Callable<Image>() {
+        @Override
+        public Image call() throws IOException {
+          return doLoad();
+        }
+      });
+      FutureTask<Image> running = ourLoads.putIfAbsent(this, task);
+      if (running == null) {
+        try {
+          task.run();
+        }
+        finally {
+          ourLoads.remove(this, task);
+        }
+        running = task;
+      }
+      try {
+        return running.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while loading " + path);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException)cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+        if (cause instanceof Error) throw (Error)cause;
+        throw new IOException(cause);
+      }
+    }
+
+    @Nullable
+    private Image doLoad() throws IOException {
+      IconEvent event = IconEvents.begin(Kind.LOAD);
       String cacheKey = null;
       InputStream stream = null;
       URL url = null;
@@ -90,24 +133,48 @@ public class ImageLoader implements Serializable {
       }
       if (stream == null) {
         url = new URL(path);
-        URLConnection connection = url.openConnection();
-        if (connection instanceof HttpURLConnection) {
+        if (RemoteIconFetcher.isRemote(url)) {
           if (!original) return null;
-          connection.addRequestProperty("User-Agent", "IntelliJ");
 
           cacheKey = path;
           Image image = ourCache.get(cacheKey);
           if (image != null) return image;
+          stream = new ByteArrayInputStream(RemoteIconFetcher.getInstance().download(url));
+        }
+        else {
+          stream = url.openStream();
         }
-        stream = connection.getInputStream();
       }
-      Image image = type.load(url, stream, scale);
+      CountingInputStream counter = event != null ? new CountingInputStream(stream) : null;
+      Image image = type.load(url, counter != null ? counter : stream, scale);
       if (image != null && cacheKey != null) {
         ourCache.put(cacheKey, image);
       }
+      if (counter != null) {
+        IconEvents.end(event, path, getVariantName(),
+                       counter.myCount, image == null ? -1 : image.getWidth(null), image == null ? -1 : image.getHeight(null));
+      }
       return image;
     }
 
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ImageDesc)) return false;
+      ImageDesc desc = (ImageDesc)o;
+      return cls == desc.cls && scale == desc.scale && type == desc.type && original == desc.original && path.equals(desc.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * path.hashCode() + Float.floatToIntBits(scale);
+    }
+
+    @NotNull
+    public String getVariantName() {
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
     @Override
     public String toString() {
       return path + ", scale: " + scale + ", type: " + type;
@@ -125,13 +192,18 @@ public class ImageLoader implements Serializable {
     @Nullable
     public Image load(@NotNull ImageConverterChain converters) {
       for (ImageDesc desc : this) {
+        IconLoaderStats.increment(Counter.VARIANT_PROBE);
         try {
           Image image = desc.load();
-          if (image == null) continue;
+          if (image == null) {
+            IconLoaderStats.increment(Counter.FAILED_VARIANT_PROBE);
+            continue;
+          }
 //          LOG.debug("Loaded image: " + desc);
           return converters.convert(image, desc);
         }
         catch (IOException ignore) {
+          IconLoaderStats.increment(Counter.FAILED_VARIANT_PROBE);
         }
       }
       return null;
@@ -144,21 +216,27 @@ public class ImageLoader implements Serializable {
                                        boolean allowFloatScaling)
     {
       ImageDescList vars = new ImageDescList();
-      if (retina || dark) {
-        final String name = getNameWithoutExtension(file);
-        final String ext = getExtension(file);
+      final String name = getNameWithoutExtension(file);
+      final String ext = getExtension(file);
+      // SVG images are rasterized right at the target scale: 2x on Retina, the UI scale otherwise
+      final float svgScale = UIUtil.isRetina() ? 2f : calcScaleFactor(allowFloatScaling);
 
-        float scale = calcScaleFactor(allowFloatScaling);
+      if ("svg".equalsIgnoreCase(ext)) {
+        if (dark) {
+          vars.add(new ImageDesc(name + "_dark." + ext, cls, svgScale, ImageDesc.Type.SVG));
+        }
+        vars.add(new ImageDesc(file, cls, svgScale, ImageDesc.Type.SVG, true));
+        return vars;
+      }
 
-        // TODO: allow SVG images to freely scale on Retina
+      if (retina || dark) {
+        if (Registry.is("ide.svg.icon") && dark) {
+          vars.add(new ImageDesc(name + "_dark.svg", cls, svgScale, ImageDesc.Type.SVG));
+        }
 
-//        if (Registry.is("ide.svg.icon") && dark) {
-//          vars.add(new ImageDesc(name + "_dark.svg", cls, UIUtil.isRetina() ? 2f : scale, ImageDesc.Type.SVG));
-//        }
-//
-//        if (Registry.is("ide.svg.icon")) {
-//          vars.add(new ImageDesc(name + ".svg", cls, UIUtil.isRetina() ? 2f : scale, ImageDesc.Type.SVG));
-//        }
+        if (Registry.is("ide.svg.icon")) {
+          vars.add(new ImageDesc(name + ".svg", cls, svgScale, ImageDesc.Type.SVG));
+        }
 
         if (dark && retina) {
           vars.add(new ImageDesc(name + "@2x_dark." + ext, cls, 2f, ImageDesc.Type.PNG));
@@ -192,7 +270,11 @@ public class ImageLoader implements Serializable {
       return with(new ImageConverter() {
         @Override
         public Image convert(Image source, ImageDesc desc) {
-          return ImageUtil.filter(source, filter);
+          if (source == null || filter == null) return source;
+          long start = System.nanoTime();
+          Image image = ImageUtil.filter(source, filter);
+          IconLoaderStats.record(Phase.FILTER, start);
+          return image;
         }
       });
     }
@@ -215,9 +297,15 @@ public class ImageLoader implements Serializable {
     }
 
     public Image convert(Image image, ImageDesc desc) {
+      IconEvent event = IconEvents.begin(Kind.CONVERT);
       for (ImageConverter f : this) {
         image = f.convert(image, desc);
       }
+      if (event != null && image != null) {
+        int width = ImageUtil.getRealWidth(image);
+        int height = ImageUtil.getRealHeight(image);
+        IconEvents.end(event, desc.path, desc.getVariantName(), 4L * width * height, width, height);
+      }
       return image;
     }
   }
@@ -268,7 +356,7 @@ public class ImageLoader implements Serializable {
         withRetina().
         with(new ImageConverter() {
               public Image convert(Image source, ImageDesc desc) {
-                if (source != null && scaleImages /*&& desc.type != ImageDesc.Type.SVG*/) {
+                if (source != null && scaleImages && desc.type != ImageDesc.Type.SVG) {
                   if (desc.path.contains("@2x"))
                     return scaleImage(source, scaleFactor / 2.0f);  // divide by 2.0 as Retina images are 2x the resolution.
                   else
@@ -297,7 +385,10 @@ public class ImageLoader implements Serializable {
     // Using "QUALITY" instead of "ULTRA_QUALITY" results in images that are less blurry
     // because ultra quality performs a few more passes when scaling, which introduces blurriness
     // when the scaling factor is relatively small (i.e. <= 3.0f) -- which is the case here.
-    return Scalr.resize(ImageUtil.toBufferedImage(image), Scalr.Method.QUALITY, width, height);
+    long start = System.nanoTime();
+    Image scaled = Scalr.resize(ImageUtil.toBufferedImage(image), Scalr.Method.QUALITY, width, height);
+    IconLoaderStats.record(Phase.SCALE, start);
+    return scaled;
   }
 
   @Nullable
@@ -311,6 +402,25 @@ public class ImageLoader implements Serializable {
       load(ImageConverterChain.create().withFilter(filter).withRetina());
   }
 
+  /**
+   * Rasterizes an SVG icon directly at {@code scale}, preferring its dark variant if {@code dark} is set.
+   * Unlike bitmaps, SVG icons are never resampled.
+   */
+  @Nullable
+  public static Image loadSvgFromUrl(@NotNull URL url, boolean dark, float scale, ImageFilter filter) {
+    String file = url.toString();
+    ImageDescList vars = new ImageDescList();
+    if (dark) {
+      vars.add(new ImageDesc(getNameWithoutExtension(file) + "_dark.svg", null, scale, ImageDesc.Type.SVG));
+    }
+    vars.add(new ImageDesc(file, null, scale, ImageDesc.Type.SVG, true));
+    return vars.load(ImageConverterChain.create().withFilter(filter));
+  }
+
+  public static boolean isSvg(@NotNull URL url) {
+    return "svg".equalsIgnoreCase(getExtension(url.getPath()));
+  }
+
   @Nullable
   public static Image loadFromResource(@NonNls @NotNull String s) {
     Class callerClass = ReflectionUtil.getGrandCallerClass();
@@ -354,11 +464,7 @@ public class ImageLoader implements Serializable {
         inputStream.close();
       }
 
-      Image image = Toolkit.getDefaultToolkit().createImage(outputStream.getInternalBuffer(), 0, outputStream.size());
-
-      waitForImage(image);
-
-      return image;
+      return decode(outputStream.getInternalBuffer(), 0, outputStream.size());
     }
     catch (Exception ex) {
       ex.printStackTrace();
@@ -367,6 +473,65 @@ public class ImageLoader implements Serializable {
     return null;
   }
 
+  @NotNull
+  private static Image decode(@NotNull byte[] data, int offset, int length) {
+    IconLoaderStats.add(Counter.BYTES_READ, length);
+
+    IconEvent event = IconEvents.begin(Kind.DECODE);
+    long start = System.nanoTime();
+    Image image = Toolkit.getDefaultToolkit().createImage(data, offset, length);
+
+    if (waitForImage(image)) {
+      IconLoaderStats.record(Phase.DECODE, start);
+      IconLoaderStats.add(Counter.BYTES_DECODED, 4L * image.getWidth(null) * image.getHeight(null));
+    }
+    IconEvents.end(event, null, null, length, image.getWidth(null), image.getHeight(null));
+
+    return image;
+  }
+
+  /**
+   * Decodes the image embedded in a {@code data:} URI right from its decoded buffer.
+   * SVG images are rasterized at the current UI scale, or at 2x on Retina.
+   */
+  @Nullable
+  public static Image loadFromDataUri(@NotNull DataUri uri) {
+    try {
+      if (uri.isSvg()) {
+        boolean retina = UIUtil.isRetina();
+        Image image = SVGLoader.load(null, uri.openStream(), retina ? 2f : JBUI.scale(1f));
+        return retina ? RetinaImage.createFrom(image, 2, ourComponent) : image;
+      }
+      Image image = decode(uri.getInternalBuffer(), 0, uri.getLength());
+      return image.getWidth(null) > 0 ? image : null;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    private long myCount;
+
+    private CountingInputStream(@NotNull InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) myCount++;
+      return b;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) myCount += n;
+      return n;
+    }
+  }
+
   public static boolean isGoodSize(final Icon icon) {
     return IconLoader.isGoodSize(icon);
   }
@@ -28,14 +28,24 @@ import java.awt.image.ImageObserver;
  * @author Konstantin Bulenkov
  */
 public class JBImageIcon extends ImageIcon {
+  private transient AcceleratedSurface mySurface;
+
   public JBImageIcon(@NotNull Image image) {
     super(image);
   }
 
   @Override
-  public synchronized void paintIcon(final Component c, final Graphics g, final int x, final int y) {
+  public void paintIcon(final Component c, final Graphics g, final int x, final int y) {
     final ImageObserver observer = getImageObserver();
+    final Image image = getImage();
 
-    UIUtil.drawImage(g, getImage(), x, y, observer == null ? c : observer);
+    if (AcceleratedSurface.isEnabled()) {
+      AcceleratedSurface surface = mySurface;
+      if (surface == null || !surface.isFor(image)) {
+        mySurface = surface = new AcceleratedSurface(image);
+      }
+      if (surface.paint(g, x, y, observer == null ? c : observer)) return;
+    }
+    UIUtil.drawImage(g, image, x, y, observer == null ? c : observer);
   }
 }
@@ -143,7 +143,7 @@ public class JBUI {
     }
 
     public static EmptyIcon emptyIcon(int i) {
-        return (EmptyIcon)EmptyIcon.create(scale(i));
+        return (EmptyIcon)EmptyIcon.createScaled(i, i);
     }
 
     public static JBDimension emptySize() {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.util.IconEvents.Kind;
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Flight Recorder event classes of {@link IconEvents}, the only place referencing {@code jdk.jfr}.
+ *
+ * @author Konstantin Bulenkov
+ */
+final class JfrIconEvents {
+  private static final AbstractIconEvent[] PROTOTYPES = createPrototypes();
+
+  private JfrIconEvents() { }
+
+  @Nullable
+  static IconEvents.IconEvent begin(@NotNull Kind kind) {
+    if (!PROTOTYPES[kind.ordinal()].isEnabled()) return null;
+    AbstractIconEvent event = create(kind);
+    event.begin();
+    return event;
+  }
+
+  @NotNull
+  private static AbstractIconEvent[] createPrototypes() {
+    Kind[] kinds = Kind.values();
+    AbstractIconEvent[] prototypes = new AbstractIconEvent[kinds.length];
+    for (Kind kind : kinds) {
+      prototypes[kind.ordinal()] = create(kind);
+    }
+    return prototypes;
+  }
+
+  @NotNull
+  private static AbstractIconEvent create(@NotNull Kind kind) {
+    switch (kind) {
+      case LOAD:
+        return new Load();
+      case DECODE:
+        return new Decode();
+      case CONVERT:
+        return new Convert();
+      case SCALE:
+        return new Scale();
+      default:
+        return new Disabled();
+    }
+  }
+
+  @Category("Icon Loader")
+  @StackTrace(false)
+  abstract static class AbstractIconEvent extends Event implements IconEvents.IconEvent {
+    @Label("Path")
+    String path;
+
+    @Label("Variant")
+    String variant;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Override
+    public void end(@Nullable String path, @Nullable String variant, long bytes, int width, int height) {
+      end();
+      if (shouldCommit()) {
+        this.path = path;
+        this.variant = variant;
+        this.bytes = bytes;
+        this.width = width;
+        this.height = height;
+        commit();
+      }
+    }
+  }
+
+  @Name("com.bulenkov.iconloader.Load")
+  @Label("Icon Load")
+  @Description("Reading an icon variant from a resource or URL")
+  static class Load extends AbstractIconEvent {
+  }
+
+  @Name("com.bulenkov.iconloader.Decode")
+  @Label("Icon Decode")
+  @Description("Decoding icon bytes into an image")
+  static class Decode extends AbstractIconEvent {
+  }
+
+  @Name("com.bulenkov.iconloader.Convert")
+  @Label("Icon Convert")
+  @Description("Filter and HiDPI conversion of a loaded icon")
+  static class Convert extends AbstractIconEvent {
+  }
+
+  @Name("com.bulenkov.iconloader.Scale")
+  @Label("Icon Scale")
+  @Description("Resizing an image with Scalr")
+  static class Scale extends AbstractIconEvent {
+  }
+
+  @Name("com.bulenkov.iconloader.Disabled")
+  @Label("Disabled Icon")
+  @Description("Creating a disabled icon")
+  static class Disabled extends AbstractIconEvent {
+  }
+}
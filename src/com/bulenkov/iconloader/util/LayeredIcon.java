@@ -0,0 +1,119 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Icons painted on top of each other, e.g. a base icon with a badge. Layers may be shifted.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class LayeredIcon extends CompositeIcon {
+  private final Icon[] myIcons;
+  private final boolean[] myDisabledLayers;
+  private final int[] myHShifts;
+  private final int[] myVShifts;
+
+  public LayeredIcon(int layerCount) {
+    myIcons = new Icon[layerCount];
+    myDisabledLayers = new boolean[layerCount];
+    myHShifts = new int[layerCount];
+    myVShifts = new int[layerCount];
+  }
+
+  public LayeredIcon(@NotNull Icon... icons) {
+    this(icons.length);
+    System.arraycopy(icons, 0, myIcons, 0, icons.length);
+  }
+
+  public void setIcon(Icon icon, int layer) {
+    setIcon(icon, layer, 0, 0);
+  }
+
+  public void setIcon(Icon icon, int layer, int hShift, int vShift) {
+    myIcons[layer] = icon;
+    myHShifts[layer] = hShift;
+    myVShifts[layer] = vShift;
+    fireChanged();
+  }
+
+  public Icon getIcon(int layer) {
+    return myIcons[layer];
+  }
+
+  public void setLayerEnabled(int layer, boolean enabled) {
+    if (myDisabledLayers[layer] == enabled) {
+      myDisabledLayers[layer] = !enabled;
+      fireChanged();
+    }
+  }
+
+  public boolean isLayerEnabled(int layer) {
+    return !myDisabledLayers[layer];
+  }
+
+  @NotNull
+  @Override
+  protected Icon[] getIcons() {
+    return myIcons;
+  }
+
+  @Override
+  protected void paintIcons(Component c, Graphics g, int x, int y) {
+    int minX = getMinShift(myHShifts);
+    int minY = getMinShift(myVShifts);
+    for (int i = 0; i < myIcons.length; i++) {
+      if (isVisible(i)) {
+        myIcons[i].paintIcon(c, g, x + myHShifts[i] - minX, y + myVShifts[i] - minY);
+      }
+    }
+  }
+
+  @Override
+  public int getIconWidth() {
+    int max = 0;
+    for (int i = 0; i < myIcons.length; i++) {
+      if (isVisible(i)) max = Math.max(max, myHShifts[i] + myIcons[i].getIconWidth());
+    }
+    return max - getMinShift(myHShifts);
+  }
+
+  @Override
+  public int getIconHeight() {
+    int max = 0;
+    for (int i = 0; i < myIcons.length; i++) {
+      if (isVisible(i)) max = Math.max(max, myVShifts[i] + myIcons[i].getIconHeight());
+    }
+    return max - getMinShift(myVShifts);
+  }
+
+  private int getMinShift(int[] shifts) {
+    int min = 0;
+    for (int i = 0; i < myIcons.length; i++) {
+      if (isVisible(i)) min = Math.min(min, shifts[i]);
+    }
+    return min;
+  }
+
+  private boolean isVisible(int layer) {
+    return myIcons[layer] != null && !myDisabledLayers[layer];
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Allocates pixel storage outside of the Java heap. Small allocations are carved from shared 1 MB direct
+ * slabs, so icons don't pay the per-buffer cost of {@link ByteBuffer#allocateDirect(int)}. Every allocation
+ * is tracked by a phantom reference to its owner: once the owner is collected, the allocation is released,
+ * and a slab without live allocations is reused or dropped, which frees its native memory. Released allocations
+ * are processed on the next call, or right away on the {@link ReferenceReclaimer} thread if it's enabled.
+ * <p/>
+ * Allocations can't be moved, so a slab stays reserved while any of its allocations is alive. To keep such
+ * slabs from wasting memory, sizes are rounded up to 64 bytes and a released range is reused by the next
+ * allocation of the same size before anything new is carved. Icons come in a few sizes, so the waste is
+ * limited to ranges of sizes which are no longer allocated; {@link #getReservedBytes()} minus
+ * {@link #getUsedBytes()} shows it.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class OffHeapArena {
+  private static final int SLAB_SIZE = 1 << 20;
+  private static final int MAX_SHARED_ALLOCATION = SLAB_SIZE / 8;
+  private static final int GRANULE = 64;
+
+  private static final Object LOCK = new Object();
+  private static final ReferenceQueue<Object> ourQueue = new ReferenceQueue<Object>();
+  // keeps the phantom references reachable until they are enqueued
+  private static final Set<Allocation> ourAllocations = new HashSet<Allocation>();
+  // released ranges of the shared slabs in use by their size
+  private static final Map<Integer, List<Range>> ourFreeRanges = new HashMap<Integer, List<Range>>();
+  private static Slab ourCurrentSlab;
+  private static Slab ourSpareSlab;
+  private static long ourReservedBytes;
+  private static long ourUsedBytes;
+
+  private OffHeapArena() {
+  }
+
+  /**
+   * Allocates a native-ordered buffer of {@code size} ints which stays valid while {@code owner} is reachable.
+   * The owner must not leak the buffer: it's reused once the owner is collected.
+   */
+  @NotNull
+  public static IntBuffer allocateInts(@NotNull Object owner, int size) {
+    processQueue();
+    int bytes = (4 * size + GRANULE - 1) & -GRANULE;
+    synchronized (LOCK) {
+      Slab slab;
+      int offset;
+      Range range = bytes > MAX_SHARED_ALLOCATION ? null : takeFreeRange(bytes);
+      if (range != null) {
+        slab = range.mySlab;
+        offset = range.myOffset;
+      }
+      else {
+        if (bytes > MAX_SHARED_ALLOCATION) {
+          slab = new Slab(bytes);
+          ourReservedBytes += bytes;
+        }
+        else {
+          if (ourCurrentSlab == null || ourCurrentSlab.myBuffer.capacity() - ourCurrentSlab.myOffset < bytes) {
+            if (ourSpareSlab != null) {
+              ourCurrentSlab = ourSpareSlab;
+              ourSpareSlab = null;
+            }
+            else {
+              ourCurrentSlab = new Slab(SLAB_SIZE);
+              ourReservedBytes += SLAB_SIZE;
+            }
+          }
+          slab = ourCurrentSlab;
+        }
+        offset = slab.myOffset;
+        slab.myOffset += bytes;
+      }
+
+      ByteBuffer slice = slab.myBuffer.duplicate();
+      slice.position(offset);
+      slice.limit(offset + 4 * size);
+      slab.myLive++;
+      ourUsedBytes += bytes;
+      ourAllocations.add(new Allocation(owner, slab, offset, bytes));
+      return slice.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+  }
+
+  /**
+   * @return native memory held by slabs
+   */
+  public static long getReservedBytes() {
+    processQueue();
+    synchronized (LOCK) {
+      return ourReservedBytes;
+    }
+  }
+
+  /**
+   * @return native memory held by live allocations
+   */
+  public static long getUsedBytes() {
+    processQueue();
+    synchronized (LOCK) {
+      return ourUsedBytes;
+    }
+  }
+
+  static void processQueue() {
+    while (true) {
+      Allocation allocation = (Allocation)ourQueue.poll();
+      if (allocation == null) break;
+      release(allocation);
+    }
+  }
+
+  private static void release(@NotNull Allocation allocation) {
+    synchronized (LOCK) {
+      if (!ourAllocations.remove(allocation)) return;
+      ourUsedBytes -= allocation.myBytes;
+      Slab slab = allocation.mySlab;
+      boolean shared = slab.myBuffer.capacity() == SLAB_SIZE;
+      if (--slab.myLive > 0) {
+        if (shared) addFreeRange(new Range(slab, allocation.myOffset), allocation.myBytes);
+        return;
+      }
+
+      // the slab is empty, carve it from the start again
+      if (shared) removeFreeRanges(slab);
+      slab.myOffset = 0;
+      if (slab == ourCurrentSlab) return;
+
+      if (shared && ourSpareSlab == null) {
+        ourSpareSlab = slab;
+      }
+      else {
+        // the slab is unreachable now, its memory is freed with the buffer
+        ourReservedBytes -= slab.myBuffer.capacity();
+      }
+    }
+  }
+
+  @Nullable
+  private static Range takeFreeRange(int bytes) {
+    List<Range> ranges = ourFreeRanges.get(bytes);
+    if (ranges == null) return null;
+    Range range = ranges.remove(ranges.size() - 1);
+    if (ranges.isEmpty()) ourFreeRanges.remove(bytes);
+    return range;
+  }
+
+  private static void addFreeRange(@NotNull Range range, int bytes) {
+    List<Range> ranges = ourFreeRanges.get(bytes);
+    if (ranges == null) {
+      ranges = new ArrayList<Range>();
+      ourFreeRanges.put(bytes, ranges);
+    }
+    ranges.add(range);
+  }
+
+  private static void removeFreeRanges(@NotNull Slab slab) {
+    for (Iterator<List<Range>> it = ourFreeRanges.values().iterator(); it.hasNext(); ) {
+      List<Range> ranges = it.next();
+      for (int i = ranges.size() - 1; i >= 0; i--) {
+        if (ranges.get(i).mySlab == slab) {
+          // the order doesn't matter
+          ranges.set(i, ranges.get(ranges.size() - 1));
+          ranges.remove(ranges.size() - 1);
+        }
+      }
+      if (ranges.isEmpty()) it.remove();
+    }
+  }
+
+  private static class Slab {
+    private final ByteBuffer myBuffer;
+    private int myOffset;
+    private int myLive;
+
+    private Slab(int size) {
+      myBuffer = ByteBuffer.allocateDirect(size);
+    }
+  }
+
+  private static class Range {
+    private final Slab mySlab;
+    private final int myOffset;
+
+    private Range(@NotNull Slab slab, int offset) {
+      mySlab = slab;
+      myOffset = offset;
+    }
+  }
+
+  private static class Allocation extends PhantomReference<Object> implements ReferenceReclaimer.Reclaimable {
+    private final Slab mySlab;
+    private final int myOffset;
+    private final int myBytes;
+
+    private Allocation(@NotNull Object owner, @NotNull Slab slab, int offset, int bytes) {
+      super(owner, ReferenceReclaimer.isEnabled() ? ReferenceReclaimer.getQueue() : ourQueue);
+      mySlab = slab;
+      myOffset = offset;
+      myBytes = bytes;
+    }
+
+    @Override
+    public void reclaim() {
+      release(this);
+    }
+  }
+}
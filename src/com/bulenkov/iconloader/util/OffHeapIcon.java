@@ -0,0 +1,199 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An image icon keeping its ARGB pixels in {@link OffHeapArena}, out of the heap scanned by GC.
+ * A heap raster is materialized only while the icon is hot: materialized rasters are limited by
+ * a byte budget and the ones not painted since the previous sweep are dropped first (the CLOCK policy).
+ * <p/>
+ * Disabled by default, use {@code -Dicons.offheap=true} or {@link #setEnabled(boolean)}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class OffHeapIcon extends ImageIcon {
+  private static final long serialVersionUID = 1L;
+  private static final long HOT_BUDGET = 8L << 20;
+
+  private static volatile boolean ourEnabled = Registry.is("icons.offheap");
+
+  private static final List<OffHeapIcon> ourHot = new ArrayList<OffHeapIcon>();
+  private static int ourHand;
+  private static long ourHotBytes;
+
+  private final transient IntBuffer myPixels;
+  private final int myRawWidth;
+  private final int myRawHeight;
+  private final int myWidth;
+  private final int myHeight;
+  private final boolean myHiDPI;
+
+  private transient volatile Image myHotImage;
+  private transient volatile boolean myReferenced;
+
+  private OffHeapIcon(@NotNull BufferedImage raster, int width, int height, boolean hidpi) {
+    myRawWidth = raster.getWidth();
+    myRawHeight = raster.getHeight();
+    myWidth = width;
+    myHeight = height;
+    myHiDPI = hidpi;
+    int[] pixels = raster.getRGB(0, 0, myRawWidth, myRawHeight, null, 0, myRawWidth);
+    myPixels = OffHeapArena.allocateInts(this, pixels.length);
+    myPixels.put(pixels);
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  /**
+   * @return an off-heap copy of the icon, or {@code null} if the icon image can't be stored off-heap
+   */
+  @Nullable
+  public static OffHeapIcon create(@NotNull ImageIcon icon) {
+    if (icon instanceof OffHeapIcon) return (OffHeapIcon)icon;
+    if (SystemInfo.isAppleJvm) return null;
+    Image image = icon.getImage();
+    if (image == null) return null;
+
+    boolean hidpi = false;
+    if (image instanceof JBHiDPIScaledImage && ((JBHiDPIScaledImage)image).getDelegate() != null) {
+      image = ((JBHiDPIScaledImage)image).getDelegate();
+      hidpi = true;
+    }
+    int width = icon.getIconWidth();
+    int height = icon.getIconHeight();
+    if (width <= 0 || height <= 0 || image.getWidth(null) <= 0 || image.getHeight(null) <= 0) return null;
+    return new OffHeapIcon(ImageUtil.toBufferedImage(image), width, height, hidpi);
+  }
+
+  @Override
+  public Image getImage() {
+    myReferenced = true;
+    Image image = myHotImage;
+    return image != null ? image : materialize();
+  }
+
+  @Override
+  public int getIconWidth() {
+    return myWidth;
+  }
+
+  @Override
+  public int getIconHeight() {
+    return myHeight;
+  }
+
+  @Override
+  public void paintIcon(Component c, Graphics g, int x, int y) {
+    UIUtil.drawImage(g, getImage(), x, y, c);
+  }
+
+  @NotNull
+  private synchronized Image materialize() {
+    Image image = myHotImage;
+    if (image != null) return image;
+
+    int[] pixels = new int[myRawWidth * myRawHeight];
+    IntBuffer source = myPixels.duplicate();
+    source.rewind();
+    source.get(pixels);
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage raster = new BufferedImage(myRawWidth, myRawHeight, BufferedImage.TYPE_INT_ARGB);
+    raster.getRaster().setDataElements(0, 0, myRawWidth, myRawHeight, pixels);
+    // the wrapper only carries the logical size and is never drawn itself
+    image = myHiDPI ? new JBHiDPIScaledImage(raster, myWidth, myHeight, BufferedImage.TYPE_BYTE_BINARY) : raster;
+    myHotImage = image;
+    makeHot(this);
+    return image;
+  }
+
+  private static void makeHot(@NotNull OffHeapIcon icon) {
+    synchronized (ourHot) {
+      ourHot.add(icon);
+      ourHotBytes += icon.getRasterBytes();
+      while (ourHotBytes > HOT_BUDGET && ourHot.size() > 1) {
+        if (ourHand >= ourHot.size()) ourHand = 0;
+        OffHeapIcon candidate = ourHot.get(ourHand);
+        if (candidate.myReferenced && candidate != icon) {
+          candidate.myReferenced = false;
+          ourHand++;
+        }
+        else if (candidate != icon) {
+          // swap with the last one, the order doesn't matter for CLOCK
+          ourHot.set(ourHand, ourHot.get(ourHot.size() - 1));
+          ourHot.remove(ourHot.size() - 1);
+          candidate.myHotImage = null;
+          ourHotBytes -= candidate.getRasterBytes();
+        }
+        else {
+          ourHand++;
+        }
+      }
+    }
+  }
+
+  int getRawWidth() {
+    return myRawWidth;
+  }
+
+  int getRawHeight() {
+    return myRawHeight;
+  }
+
+  /**
+   * Reads a row of ARGB pixels right from the off-heap storage, without materializing the image.
+   */
+  void getRow(int y, @NotNull int[] row) {
+    IntBuffer source = myPixels.duplicate();
+    source.position(y * myRawWidth);
+    source.get(row, 0, myRawWidth);
+  }
+
+  /**
+   * The pixels aren't serialized with the icon, so it's serialized as a heap icon.
+   */
+  private Object writeReplace() {
+    return new JBImageIcon(getImage());
+  }
+
+  private long getRasterBytes() {
+    return 4L * myRawWidth * myRawHeight;
+  }
+
+  /**
+   * @return whether a heap raster is currently materialized for this icon
+   */
+  public boolean isHot() {
+    return myHotImage != null;
+  }
+}
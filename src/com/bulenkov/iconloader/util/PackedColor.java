@@ -0,0 +1,164 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link ColorUtil} counterpart working on non-premultiplied {@code 0xAARRGGBB} ints, as returned by
+ * {@link java.awt.Color#getRGB()} and {@link java.awt.image.BufferedImage#getRGB(int, int)}.
+ * Nothing here allocates, so the methods are safe to call per pixel; the bulk variants process
+ * {@code length} pixels of a raster in place starting at {@code offset}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class PackedColor {
+  private PackedColor() {
+  }
+
+  public static int alpha(int argb) {
+    return argb >>> 24;
+  }
+
+  public static int red(int argb) {
+    return argb >> 16 & 0xFF;
+  }
+
+  public static int green(int argb) {
+    return argb >> 8 & 0xFF;
+  }
+
+  public static int blue(int argb) {
+    return argb & 0xFF;
+  }
+
+  public static int pack(int alpha, int red, int green, int blue) {
+    return clamp(alpha) << 24 | clamp(red) << 16 | clamp(green) << 8 | clamp(blue);
+  }
+
+  /**
+   * Multiplies the color components by {@code d} keeping alpha, like {@link ColorUtil#shift(java.awt.Color, double)}.
+   */
+  public static int shift(int argb, double d) {
+    return argb & 0xFF000000 | scale(red(argb), d) << 16 | scale(green(argb), d) << 8 | scale(blue(argb), d);
+  }
+
+  public static int withAlpha(int argb, int alpha) {
+    return clamp(alpha) << 24 | argb & 0xFFFFFF;
+  }
+
+  /**
+   * Linear interpolation of all four components: {@code ratio} 0 gives {@code from}, 1 gives {@code to}.
+   */
+  public static int blend(int from, int to, double ratio) {
+    if (ratio <= 0) return from;
+    if (ratio >= 1) return to;
+    int r = (int)(ratio * 256);
+    return mix(alpha(from), alpha(to), r) << 24 | mix(red(from), red(to), r) << 16 |
+           mix(green(from), green(to), r) << 8 | mix(blue(from), blue(to), r);
+  }
+
+  /**
+   * @return perceptual luminance in 0..255
+   */
+  public static int luminance(int argb) {
+    return (299 * red(argb) + 587 * green(argb) + 114 * blue(argb)) / 1000;
+  }
+
+  /**
+   * Same as {@link ColorUtil#isDark(java.awt.Color)}.
+   */
+  public static boolean isDark(int argb) {
+    return 299 * red(argb) + 587 * green(argb) + 114 * blue(argb) <= 127500;
+  }
+
+  /**
+   * Parses {@code #abc123}, {@code ABC123}, {@code ab5} or {@code #FFF} into an opaque color without creating strings.
+   */
+  public static int fromHex(@NotNull CharSequence str) {
+    int start = str.length() > 0 && str.charAt(0) == '#' ? 1 : 0;
+    int length = str.length() - start;
+    if (length != 3 && length != 6) throw new IllegalArgumentException("Should be String of 3 or 6 chars length.");
+    int rgb = 0;
+    for (int i = start; i < str.length(); i++) {
+      int digit = Character.digit(str.charAt(i), 16);
+      if (digit < 0) throw new IllegalArgumentException("Not a hex color: " + str);
+      rgb = length == 3 ? rgb << 8 | 17 * digit : rgb << 4 | digit;
+    }
+    return 0xFF000000 | rgb;
+  }
+
+  public static void shift(@NotNull int[] pixels, int offset, int length, double d) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      pixels[i] = shift(pixels[i], d);
+    }
+  }
+
+  /**
+   * Multiplies the alpha of every pixel by {@code alpha} in 0..1.
+   */
+  public static void scaleAlpha(@NotNull int[] pixels, int offset, int length, float alpha) {
+    int a = Math.round(clamp(alpha) * 256);
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int argb = pixels[i];
+      pixels[i] = (alpha(argb) * a >> 8) << 24 | argb & 0xFFFFFF;
+    }
+  }
+
+  /**
+   * Tints the pixels towards {@code color} keeping their alpha.
+   */
+  public static void blend(@NotNull int[] pixels, int offset, int length, int color, double ratio) {
+    if (ratio <= 0) return;
+    int r = (int)(Math.min(ratio, 1) * 256);
+    int red = red(color);
+    int green = green(color);
+    int blue = blue(color);
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int argb = pixels[i];
+      pixels[i] = argb & 0xFF000000 | mix(red(argb), red, r) << 16 | mix(green(argb), green, r) << 8 | mix(blue(argb), blue, r);
+    }
+  }
+
+  /**
+   * Replaces every pixel with its luminance, keeping alpha.
+   */
+  public static void toGray(@NotNull int[] pixels, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int argb = pixels[i];
+      int gray = luminance(argb);
+      pixels[i] = argb & 0xFF000000 | gray << 16 | gray << 8 | gray;
+    }
+  }
+
+  // ratio is in 1/256 units
+  private static int mix(int from, int to, int ratio) {
+    return from + ((to - from) * ratio >> 8);
+  }
+
+  private static int scale(int component, double d) {
+    return clamp((int)(component * d));
+  }
+
+  private static int clamp(int component) {
+    return component > 255 ? 255 : component < 0 ? 0 : component;
+  }
+
+  private static float clamp(float alpha) {
+    return alpha > 1 ? 1 : alpha < 0 ? 0 : alpha;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * Stores small icons with few colors as an {@link IndexColorModel} palette plus 1, 2, 4 or 8 bit indices
+ * instead of 32-bit ARGB: a 16x16 icon with 40 colors takes 256 bytes of indices and 160 bytes of palette
+ * instead of 1 KB. The conversion is lossless, icons with more than 256 distinct colors are left intact.
+ * Indexed images are drawn directly by Java2D, frequently painted ones may additionally be kept
+ * by {@link AcceleratedSurface}.
+ * <p/>
+ * Disabled by default, use {@code -Dicons.palette.storage=true} or {@link #setEnabled(boolean)}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class PaletteImage {
+  private static final int MAX_COLORS = 256;
+  private static final int MAX_PIXELS = 128 * 128;
+
+  private static volatile boolean ourEnabled = Registry.is("icons.palette.storage");
+
+  private PaletteImage() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  /**
+   * @return an indexed copy of the image, wrapped the same way for HiDPI,
+   *         or {@code null} if the image is too big or has too many colors
+   */
+  @Nullable
+  public static Image compact(@NotNull Image image) {
+    if (SystemInfo.isAppleJvm) return null;
+
+    Image raster = image;
+    if (image instanceof JBHiDPIScaledImage) {
+      raster = ((JBHiDPIScaledImage)image).getDelegate();
+      if (raster == null) return null;
+    }
+    if (isCompact(raster)) return image;
+
+    int width = raster.getWidth(null);
+    int height = raster.getHeight(null);
+    if (width <= 0 || height <= 0 || width * height > MAX_PIXELS) return null;
+
+    BufferedImage indexed = toIndexed(ImageUtil.toBufferedImage(raster));
+    if (indexed == null) return null;
+    if (raster == image) return indexed;
+
+    // the wrapper only carries the logical size, it's never drawn itself, so keep its own raster minimal
+    int logicalWidth = image.getWidth(null);
+    int logicalHeight = image.getHeight(null);
+    return new JBHiDPIScaledImage(indexed, logicalWidth, logicalHeight, BufferedImage.TYPE_BYTE_BINARY);
+  }
+
+  public static boolean isCompact(@Nullable Image image) {
+    if (image instanceof JBHiDPIScaledImage) image = ((JBHiDPIScaledImage)image).getDelegate();
+    return image instanceof BufferedImage && ((BufferedImage)image).getColorModel() instanceof IndexColorModel;
+  }
+
+  @Nullable
+  static BufferedImage toIndexed(@NotNull BufferedImage source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int[] pixels = source.getRGB(0, 0, width, height, null, 0, width);
+
+    // open addressing table of palette colors; 0 marks an empty slot, so indices are stored off by one
+    int[] keys = new int[2 * MAX_COLORS];
+    int[] slots = new int[keys.length];
+    int[] palette = new int[MAX_COLORS];
+    int colors = 0;
+    for (int i = 0; i < pixels.length; i++) {
+      int argb = pixels[i];
+      if (argb >>> 24 == 0) argb = 0; // all fully transparent pixels look the same
+      int slot = (argb * 0x9E3779B9 >>> 23) & (keys.length - 1);
+      while (slots[slot] != 0 && keys[slot] != argb) {
+        slot = (slot + 1) & (keys.length - 1);
+      }
+      if (slots[slot] == 0) {
+        if (colors == MAX_COLORS) return null;
+        palette[colors++] = argb;
+        keys[slot] = argb;
+        slots[slot] = colors;
+      }
+      pixels[i] = slots[slot] - 1;
+    }
+
+    int bits = colors <= 2 ? 1 : colors <= 4 ? 2 : colors <= 16 ? 4 : 8;
+    IndexColorModel model = new IndexColorModel(bits, colors, Arrays.copyOf(palette, colors), 0, true, -1, DataBuffer.TYPE_BYTE);
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage result = new BufferedImage(width, height, bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, model);
+    result.getRaster().setPixels(0, 0, width, height, pixels);
+    return result;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Reclaims cleared references of icon caches on a shared daemon thread instead of the threads mutating them.
+ * After a GC clears thousands of soft references at once, {@code put} and {@code remove} don't pay for the cleanup.
+ * <p/>
+ * References created while the mode is on are registered with {@link #getQueue()} and must implement
+ * {@link Reclaimable}. The mode is off by default, enable it with {@code -Dicons.background.reclaim=true}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class ReferenceReclaimer {
+  private static volatile boolean ourEnabled = Registry.is("icons.background.reclaim");
+
+  interface Reclaimable {
+    /**
+     * Called on the reclaimer thread once the reference is cleared and enqueued.
+     */
+    void reclaim();
+  }
+
+  private ReferenceReclaimer() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  @NotNull
+  static ReferenceQueue<Object> getQueue() {
+    return QueueHolder.ourQueue;
+  }
+
+  /**
+   * Starts the thread on first use; class initialization makes it happen once without locking every caller.
+   */
+  private static class QueueHolder {
+    private static final ReferenceQueue<Object> ourQueue = new ReferenceQueue<Object>();
+
+    static {
+      ConcurrencyUtil.newNamedThreadFactory("Icon Reference Reclaimer", true, Thread.NORM_PRIORITY).newThread(new Runnable() {
+        @Override
+        public void run() {
+          reclaimForever();
+        }
+      }).start();
+    }
+
+    private static void reclaimForever() {
+      while (true) {
+        try {
+          Reference<?> ref = ourQueue.remove();
+          ((Reclaimable)ref).reclaim();
+        }
+        catch (InterruptedException ignore) {
+        }
+        catch (Throwable e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+}
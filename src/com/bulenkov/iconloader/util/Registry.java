@@ -25,6 +25,11 @@ public class Registry {
     return "true".equalsIgnoreCase(value);
   }
 
+  public static boolean is(String key, boolean defaultValue) {
+    final String value = System.getProperty(key);
+    return value == null ? defaultValue : "true".equalsIgnoreCase(value);
+  }
+
   public static Float getFloat(String key) {
     try {
       return Float.parseFloat(System.getProperty(key));
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads remote icons in the background.
+ * <ul>
+ * <li>Concurrent requests for the same URL share one download.</li>
+ * <li>At most {@code maxConnectionsPerHost} downloads run per host, the rest wait in a per-host queue
+ * without occupying a thread.</li>
+ * <li>Connect and read timeouts are applied to every connection.</li>
+ * <li>Each caller gets its own {@link Future}; the download is aborted once every caller sharing it has cancelled.</li>
+ * <li>With a {@link HttpIconDiskCache}, cached icons are revalidated with a conditional GET and served from disk
+ * if the server answers 304, fails with 5xx or can't be reached at all.</li>
+ * </ul>
+ * Defaults of the shared instance can be changed with {@code -Dicons.remote.connections.per.host},
+ * {@code -Dicons.remote.connect.timeout} and {@code -Dicons.remote.read.timeout} (milliseconds);
+ * its disk cache is configured as described in {@link HttpIconDiskCache#createDefault()}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class RemoteIconFetcher {
+  private static final String USER_AGENT = "IconLoader";
+
+  private static final RemoteIconFetcher ourInstance = new RemoteIconFetcher(Integer.getInteger("icons.remote.connections.per.host", 4),
+                                                                             Integer.getInteger("icons.remote.connect.timeout", 10000),
+                                                                             Integer.getInteger("icons.remote.read.timeout", 30000),
+                                                                             HttpIconDiskCache.createDefault());
+
+  private final int myMaxConnectionsPerHost;
+  private final int myConnectTimeout;
+  private final int myReadTimeout;
+  @Nullable private final HttpIconDiskCache myDiskCache;
+  private final ExecutorService myExecutor = Executors.newCachedThreadPool(
+    ConcurrencyUtil.newNamedThreadFactory("RemoteIconFetcher", true, Thread.NORM_PRIORITY));
+
+  private final ConcurrentMap<String, Download> myInFlight = new ConcurrentHashMap<String, Download>();
+  // recently downloaded bytes, kept softly reachable so that an icon requested again, e.g. after its decoded
+  // image was dropped, isn't downloaded again; they are only removed by GC or clearCache()
+  private final ConcurrentMap<String, byte[]> myRecent = new ConcurrentSoftValueHashMap<String, byte[]>();
+  private final Map<String, HostQueue> myHosts = new HashMap<String, HostQueue>();
+  private final AtomicLong myDownloadCount = new AtomicLong();
+
+  public RemoteIconFetcher(int maxConnectionsPerHost, int connectTimeoutMillis, int readTimeoutMillis) {
+    this(maxConnectionsPerHost, connectTimeoutMillis, readTimeoutMillis, null);
+  }
+
+  public RemoteIconFetcher(int maxConnectionsPerHost, int connectTimeoutMillis, int readTimeoutMillis,
+                           @Nullable HttpIconDiskCache diskCache) {
+    if (maxConnectionsPerHost <= 0) throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+    myMaxConnectionsPerHost = maxConnectionsPerHost;
+    myConnectTimeout = connectTimeoutMillis;
+    myReadTimeout = readTimeoutMillis;
+    myDiskCache = diskCache;
+  }
+
+  @NotNull
+  public static RemoteIconFetcher getInstance() {
+    return ourInstance;
+  }
+
+  public static boolean isRemote(@NotNull URL url) {
+    String protocol = url.getProtocol();
+    return "http".equalsIgnoreCase(protocol) || "https".equalsIgnoreCase(protocol);
+  }
+
+  /**
+   * Starts downloading {@code url}, or joins the download already in progress.
+   */
+  @NotNull
+  public Future<byte[]> fetch(@NotNull URL url) {
+    String key = url.toExternalForm();
+    while (true) {
+      Download download = myInFlight.get(key);
+      if (download == null) {
+        byte[] bytes = myRecent.get(key);
+        if (bytes != null) return new Done(bytes);
+
+        Download created = new Download(url, key);
+        download = myInFlight.putIfAbsent(key, created);
+        if (download == null) {
+          download = created;
+          schedule(created);
+        }
+      }
+      Future<byte[]> handle = download.join();
+      if (handle != null) return handle;
+      // cancelled by all its callers just now, start over
+      myInFlight.remove(key, download);
+    }
+  }
+
+  /**
+   * Fetches {@code url} and waits for the result.
+   */
+  @NotNull
+  public byte[] download(@NotNull URL url) throws IOException {
+    Future<byte[]> future = fetch(url);
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while downloading " + url);
+    }
+    catch (CancellationException e) {
+      throw new InterruptedIOException("Download cancelled: " + url);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException)cause;
+      throw new IOException("Can't download " + url + ": " + cause);
+    }
+  }
+
+  /**
+   * @return number of downloads actually started, for diagnostics
+   */
+  public long getDownloadCount() {
+    return myDownloadCount.get();
+  }
+
+  public void clearCache() {
+    myRecent.clear();
+  }
+
+  private void schedule(@NotNull Download download) {
+    synchronized (myHosts) {
+      HostQueue queue = myHosts.get(download.myHost);
+      if (queue == null) {
+        queue = new HostQueue();
+        myHosts.put(download.myHost, queue);
+      }
+      if (queue.myActive < myMaxConnectionsPerHost) {
+        queue.myActive++;
+        myExecutor.execute(download);
+      }
+      else {
+        queue.myPending.add(download);
+      }
+    }
+  }
+
+  private void finished(@NotNull Download download) {
+    synchronized (myHosts) {
+      HostQueue queue = myHosts.get(download.myHost);
+      if (queue == null) return;
+      Download next;
+      do {
+        next = queue.myPending.poll();
+      }
+      while (next != null && next.isCancelled());
+
+      if (next != null) {
+        myExecutor.execute(next);
+      }
+      else if (--queue.myActive == 0) {
+        myHosts.remove(download.myHost);
+      }
+    }
+  }
+
+  @NotNull
+  private static byte[] read(@NotNull URLConnection connection) throws IOException {
+    InputStream stream = connection.getInputStream();
+    try {
+      BufferExposingByteArrayOutputStream out = new BufferExposingByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = stream.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  private static class HostQueue {
+    private int myActive;
+    private final Queue<Download> myPending = new ArrayDeque<Download>();
+  }
+
+  private class Download implements Runnable {
+    private final URL myUrl;
+    private final String myKey;
+    private final String myHost;
+    private int myWaiters;
+    // every caller has cancelled, the download can't be joined anymore
+    private boolean myAbandoned;
+    private volatile URLConnection myConnection;
+
+    private final FutureTask<byte[]> myTask = new FutureTask<byte[]>(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws IOException {
+        return load();
+      }
+    }) {
+      @Override
+      protected void set(byte[] bytes) {
+        myRecent.put(myKey, bytes);
+        super.set(bytes);
+      }
+
+      @Override
+      protected void done() {
+        myInFlight.remove(myKey, Download.this);
+      }
+    };
+
+    private Download(@NotNull URL url, @NotNull String key) {
+      myUrl = url;
+      myKey = key;
+      myHost = url.getHost().toLowerCase(Locale.US) + ":" + url.getPort();
+    }
+
+    @Override
+    public void run() {
+      try {
+        myTask.run();
+      }
+      finally {
+        finished(this);
+      }
+    }
+
+    private boolean isCancelled() {
+      return myTask.isCancelled();
+    }
+
+    @NotNull
+    private byte[] load() throws IOException {
+      myDownloadCount.incrementAndGet();
+      HttpIconDiskCache.Entry cached = myDiskCache != null ? myDiskCache.get(myKey) : null;
+      URLConnection connection = myUrl.openConnection();
+      connection.setConnectTimeout(myConnectTimeout);
+      connection.setReadTimeout(myReadTimeout);
+      connection.addRequestProperty("User-Agent", USER_AGENT);
+      if (cached != null) {
+        if (cached.eTag != null) connection.addRequestProperty("If-None-Match", cached.eTag);
+        if (cached.lastModified != null) connection.addRequestProperty("If-Modified-Since", cached.lastModified);
+      }
+      myConnection = connection;
+      if (isCancelled()) throw new InterruptedIOException("Download cancelled: " + myUrl);
+
+      try {
+        if (cached != null && connection instanceof HttpURLConnection) {
+          int code = ((HttpURLConnection)connection).getResponseCode();
+          if (code == HttpURLConnection.HTTP_NOT_MODIFIED || code >= 500) {
+            return cached.bytes;
+          }
+        }
+        byte[] bytes = read(connection);
+        store(connection, bytes);
+        return bytes;
+      }
+      catch (IOException e) {
+        // offline or the connection broke, the cached copy is better than nothing
+        if (cached == null || isCancelled()) throw e;
+        return cached.bytes;
+      }
+    }
+
+    private void store(@NotNull URLConnection connection, @NotNull byte[] bytes) throws IOException {
+      if (myDiskCache == null || !(connection instanceof HttpURLConnection)) return;
+      if (((HttpURLConnection)connection).getResponseCode() != HttpURLConnection.HTTP_OK) return;
+      String cacheControl = connection.getHeaderField("Cache-Control");
+      if (cacheControl != null && cacheControl.toLowerCase(Locale.US).contains("no-store")) return;
+      myDiskCache.put(myKey, new HttpIconDiskCache.Entry(bytes, connection.getHeaderField("ETag"),
+                                                         connection.getHeaderField("Last-Modified")));
+    }
+
+    @Nullable
+    private synchronized Future<byte[]> join() {
+      if (myAbandoned || isCancelled()) return null;
+      myWaiters++;
+      return new Handle(this);
+    }
+
+    private void release() {
+      synchronized (this) {
+        if (--myWaiters > 0 || myTask.isDone()) return;
+        // under the lock, so a concurrent join() either comes first and keeps the download or sees it abandoned
+        myAbandoned = true;
+        myTask.cancel(true);
+      }
+      URLConnection connection = myConnection;
+      if (connection instanceof HttpURLConnection) {
+        // unblocks a connect or read in progress, which can't be interrupted
+        ((HttpURLConnection)connection).disconnect();
+      }
+    }
+  }
+
+  private static class Handle implements Future<byte[]> {
+    private final Download myDownload;
+    private volatile boolean myCancelled;
+
+    private Handle(@NotNull Download download) {
+      myDownload = download;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      synchronized (this) {
+        if (myCancelled || myDownload.myTask.isDone()) return false;
+        myCancelled = true;
+      }
+      myDownload.release();
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return myCancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return myCancelled || myDownload.myTask.isDone();
+    }
+
+    @Override
+    public byte[] get() throws InterruptedException, ExecutionException {
+      if (myCancelled) throw new CancellationException();
+      return myDownload.myTask.get();
+    }
+
+    @Override
+    public byte[] get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      if (myCancelled) throw new CancellationException();
+      return myDownload.myTask.get(timeout, unit);
+    }
+  }
+
+  private static class Done implements Future<byte[]> {
+    private final byte[] myBytes;
+
+    private Done(@NotNull byte[] bytes) {
+      myBytes = bytes;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return true;
+    }
+
+    @Override
+    public byte[] get() {
+      return myBytes;
+    }
+
+    @Override
+    public byte[] get(long timeout, @NotNull TimeUnit unit) {
+      return myBytes;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Icons painted in a row from left to right, e.g. a tree node icon with its visibility icon.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class RowIcon extends CompositeIcon {
+  public enum Alignment {TOP, CENTER, BOTTOM}
+
+  private final Icon[] myIcons;
+  private final Alignment myAlignment;
+
+  public RowIcon(int iconCount) {
+    this(iconCount, Alignment.TOP);
+  }
+
+  public RowIcon(int iconCount, @NotNull Alignment alignment) {
+    myIcons = new Icon[iconCount];
+    myAlignment = alignment;
+  }
+
+  public RowIcon(@NotNull Icon... icons) {
+    this(icons.length);
+    System.arraycopy(icons, 0, myIcons, 0, icons.length);
+  }
+
+  public void setIcon(Icon icon, int index) {
+    myIcons[index] = icon;
+    fireChanged();
+  }
+
+  public Icon getIcon(int index) {
+    return myIcons[index];
+  }
+
+  public int getIconCount() {
+    return myIcons.length;
+  }
+
+  @NotNull
+  @Override
+  protected Icon[] getIcons() {
+    return myIcons;
+  }
+
+  @Override
+  protected void paintIcons(Component c, Graphics g, int x, int y) {
+    int height = getIconHeight();
+    int offset = 0;
+    for (Icon icon : myIcons) {
+      if (icon == null) continue;
+      int iconY;
+      switch (myAlignment) {
+        case CENTER:
+          iconY = y + (height - icon.getIconHeight()) / 2;
+          break;
+        case BOTTOM:
+          iconY = y + height - icon.getIconHeight();
+          break;
+        default:
+          iconY = y;
+      }
+      icon.paintIcon(c, g, x + offset, iconY);
+      offset += icon.getIconWidth();
+    }
+  }
+
+  @Override
+  public int getIconWidth() {
+    int width = 0;
+    for (Icon icon : myIcons) {
+      if (icon != null) width += icon.getIconWidth();
+    }
+    return width;
+  }
+
+  @Override
+  public int getIconHeight() {
+    int height = 0;
+    for (Icon icon : myIcons) {
+      if (icon != null) height = Math.max(height, icon.getIconHeight());
+    }
+    return height;
+  }
+}
@@ -0,0 +1,1004 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.*;
+import java.awt.MultipleGradientPaint.ColorSpaceType;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A parsed SVG icon, ready to be painted at any scale.
+ * <p/>
+ * Only the subset of SVG used by icons is supported: {@code path}, {@code rect}, {@code circle}, {@code ellipse},
+ * {@code line}, {@code polyline}, {@code polygon}, {@code g} and {@code use} elements, fills and strokes
+ * with solid colors and linear or radial gradients, opacity and transforms.
+ * Text, images, clipping, masks and filters are ignored. Group opacity is applied to every child separately.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class SVGDocument {
+  private static final float DEFAULT_SIZE = 16;
+
+  private final float myWidth;
+  private final float myHeight;
+  private final AffineTransform myViewBoxTransform;
+  private final List<Drawable> myDrawables;
+
+  private SVGDocument(float width, float height, @NotNull AffineTransform viewBoxTransform, @NotNull List<Drawable> drawables) {
+    myWidth = width;
+    myHeight = height;
+    myViewBoxTransform = viewBoxTransform;
+    myDrawables = drawables;
+  }
+
+  @NotNull
+  public static SVGDocument parse(@NotNull InputStream stream) throws IOException {
+    Document document;
+    try {
+      document = createBuilder().parse(stream);
+    }
+    catch (SAXException e) {
+      throw new IOException("Can't parse SVG: " + e.getMessage());
+    }
+    catch (ParserConfigurationException e) {
+      throw new IOException("Can't parse SVG: " + e.getMessage());
+    }
+
+    Element root = document.getDocumentElement();
+    if (!"svg".equals(getLocalName(root))) throw new IOException("Not an SVG document: " + root.getNodeName());
+
+    float[] viewBox = parseNumbers(root.getAttribute("viewBox"));
+    boolean hasViewBox = viewBox.length == 4 && viewBox[2] > 0 && viewBox[3] > 0;
+    float width = parseLength(root.getAttribute("width"), hasViewBox ? viewBox[2] : DEFAULT_SIZE, DEFAULT_SIZE);
+    float height = parseLength(root.getAttribute("height"), hasViewBox ? viewBox[3] : DEFAULT_SIZE, DEFAULT_SIZE);
+
+    AffineTransform viewBoxTransform = new AffineTransform();
+    if (hasViewBox) {
+      // preserveAspectRatio="xMidYMid meet"
+      double scale = Math.min(width / viewBox[2], height / viewBox[3]);
+      viewBoxTransform.translate((width - viewBox[2] * scale) / 2, (height - viewBox[3] * scale) / 2);
+      viewBoxTransform.scale(scale, scale);
+      viewBoxTransform.translate(-viewBox[0], -viewBox[1]);
+    }
+
+    Parser parser = new Parser(hasViewBox ? viewBox[2] : width, hasViewBox ? viewBox[3] : height);
+    parser.collectIds(root);
+    parser.parseChildren(root, Style.ROOT.derive(root), new AffineTransform());
+    return new SVGDocument(width, height, viewBoxTransform, parser.myDrawables);
+  }
+
+  public float getWidth() {
+    return myWidth;
+  }
+
+  public float getHeight() {
+    return myHeight;
+  }
+
+  /**
+   * Paints the document in its own coordinates, {@code getWidth() x getHeight()} at the origin.
+   */
+  public void paint(@NotNull Graphics2D g) {
+    AffineTransform saveTransform = g.getTransform();
+    Composite saveComposite = g.getComposite();
+    Paint savePaint = g.getPaint();
+    Stroke saveStroke = g.getStroke();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+      g.transform(myViewBoxTransform);
+      AffineTransform base = g.getTransform();
+      for (Drawable drawable : myDrawables) {
+        g.setTransform(base);
+        g.transform(drawable.transform);
+        drawable.paint(g, saveComposite);
+      }
+    }
+    finally {
+      g.setTransform(saveTransform);
+      g.setComposite(saveComposite);
+      g.setPaint(savePaint);
+      g.setStroke(saveStroke);
+    }
+  }
+
+  /**
+   * Rasterizes the document into an ARGB image of {@code ceil(getWidth() * scale) x ceil(getHeight() * scale)} pixels.
+   */
+  @NotNull
+  public BufferedImage render(float scale) {
+    int width = Math.max(1, (int)Math.ceil(myWidth * scale - 0.001));
+    int height = Math.max(1, (int)Math.ceil(myHeight * scale - 0.001));
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.scale(scale, scale);
+      paint(g);
+    }
+    finally {
+      g.dispose();
+    }
+    return image;
+  }
+
+  private static DocumentBuilder createBuilder() throws ParserConfigurationException {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setValidating(false);
+    factory.setExpandEntityReferences(false);
+    setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+    setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+    DocumentBuilder builder = factory.newDocumentBuilder();
+    // icons often declare the SVG 1.1 DTD, never fetch it
+    builder.setEntityResolver(new org.xml.sax.EntityResolver() {
+      @Override
+      public InputSource resolveEntity(String publicId, String systemId) {
+        return new InputSource(new StringReader(""));
+      }
+    });
+    return builder;
+  }
+
+  private static void setFeature(DocumentBuilderFactory factory, String feature, boolean value) {
+    try {
+      factory.setFeature(feature, value);
+    }
+    catch (ParserConfigurationException ignore) {
+    }
+  }
+
+  private static String getLocalName(@NotNull Node node) {
+    String name = node.getLocalName();
+    return name != null ? name : node.getNodeName();
+  }
+
+  private static class Drawable {
+    private final Shape shape;
+    private final AffineTransform transform;
+    private final Paint fill;
+    private final float fillAlpha;
+    private final Paint stroke;
+    private final float strokeAlpha;
+    private final Stroke strokeStyle;
+
+    private Drawable(Shape shape, AffineTransform transform, Paint fill, float fillAlpha, Paint stroke, float strokeAlpha, Stroke strokeStyle) {
+      this.shape = shape;
+      this.transform = transform;
+      this.fill = fill;
+      this.fillAlpha = fillAlpha;
+      this.stroke = stroke;
+      this.strokeAlpha = strokeAlpha;
+      this.strokeStyle = strokeStyle;
+    }
+
+    private void paint(Graphics2D g, Composite base) {
+      if (fill != null && fillAlpha > 0) {
+        setAlpha(g, base, fillAlpha);
+        g.setPaint(fill);
+        g.fill(shape);
+      }
+      if (stroke != null && strokeAlpha > 0) {
+        setAlpha(g, base, strokeAlpha);
+        g.setPaint(stroke);
+        g.setStroke(strokeStyle);
+        g.draw(shape);
+      }
+    }
+
+    private static void setAlpha(Graphics2D g, Composite base, float alpha) {
+      if (alpha >= 1f) {
+        g.setComposite(base);
+      }
+      else if (base instanceof AlphaComposite && ((AlphaComposite)base).getRule() == AlphaComposite.SRC_OVER) {
+        g.setComposite(((AlphaComposite)base).derive(alpha * ((AlphaComposite)base).getAlpha()));
+      }
+      else {
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+      }
+    }
+  }
+
+  /**
+   * Inherited presentation attributes.
+   */
+  private static class Style {
+    private static final Style ROOT = new Style();
+
+    private String fill = "black";
+    private String stroke = "none";
+    private float strokeWidth = 1;
+    private float fillOpacity = 1;
+    private float strokeOpacity = 1;
+    private float opacity = 1; // accumulated group opacity
+    private int fillRule = Path2D.WIND_NON_ZERO;
+    private int lineCap = BasicStroke.CAP_BUTT;
+    private int lineJoin = BasicStroke.JOIN_MITER;
+    private float miterLimit = 4;
+    private float[] dashArray;
+    private float dashOffset;
+    private String color = "black";
+    private boolean visible = true;
+
+    private Style copy() {
+      Style style = new Style();
+      style.fill = fill;
+      style.stroke = stroke;
+      style.strokeWidth = strokeWidth;
+      style.fillOpacity = fillOpacity;
+      style.strokeOpacity = strokeOpacity;
+      style.opacity = opacity;
+      style.fillRule = fillRule;
+      style.lineCap = lineCap;
+      style.lineJoin = lineJoin;
+      style.miterLimit = miterLimit;
+      style.dashArray = dashArray;
+      style.dashOffset = dashOffset;
+      style.color = color;
+      style.visible = visible;
+      return style;
+    }
+
+    private Style derive(@NotNull Element element) {
+      Map<String, String> properties = new HashMap<String, String>();
+      for (String name : new String[]{"fill", "stroke", "stroke-width", "fill-opacity", "stroke-opacity", "opacity", "fill-rule",
+        "stroke-linecap", "stroke-linejoin", "stroke-miterlimit", "stroke-dasharray", "stroke-dashoffset", "color", "display",
+        "visibility"}) {
+        if (element.hasAttribute(name)) properties.put(name, element.getAttribute(name).trim());
+      }
+      // style declarations win over presentation attributes
+      for (String declaration : element.getAttribute("style").split(";")) {
+        int colon = declaration.indexOf(':');
+        if (colon > 0) {
+          properties.put(declaration.substring(0, colon).trim(), declaration.substring(colon + 1).trim());
+        }
+      }
+      if (properties.isEmpty()) return this;
+
+      Style style = copy();
+      for (Map.Entry<String, String> entry : properties.entrySet()) {
+        String value = entry.getValue();
+        if ("inherit".equals(value)) continue;
+        String name = entry.getKey();
+        if ("fill".equals(name)) style.fill = value;
+        else if ("stroke".equals(name)) style.stroke = value;
+        else if ("color".equals(name)) style.color = value;
+        else if ("stroke-width".equals(name)) style.strokeWidth = parseLength(value, 0, strokeWidth);
+        else if ("fill-opacity".equals(name)) style.fillOpacity = parseOpacity(value);
+        else if ("stroke-opacity".equals(name)) style.strokeOpacity = parseOpacity(value);
+        else if ("opacity".equals(name)) style.opacity = opacity * parseOpacity(value);
+        else if ("fill-rule".equals(name)) style.fillRule = "evenodd".equals(value) ? Path2D.WIND_EVEN_ODD : Path2D.WIND_NON_ZERO;
+        else if ("stroke-linecap".equals(name)) {
+          style.lineCap = "round".equals(value) ? BasicStroke.CAP_ROUND : "square".equals(value) ? BasicStroke.CAP_SQUARE : BasicStroke.CAP_BUTT;
+        }
+        else if ("stroke-linejoin".equals(name)) {
+          style.lineJoin = "round".equals(value) ? BasicStroke.JOIN_ROUND : "bevel".equals(value) ? BasicStroke.JOIN_BEVEL : BasicStroke.JOIN_MITER;
+        }
+        else if ("stroke-miterlimit".equals(name)) style.miterLimit = Math.max(1, parseLength(value, 0, miterLimit));
+        else if ("stroke-dasharray".equals(name)) style.dashArray = parseDashArray(value);
+        else if ("stroke-dashoffset".equals(name)) style.dashOffset = parseLength(value, 0, 0);
+        else if ("display".equals(name) && "none".equals(value)) style.visible = false;
+        else if ("visibility".equals(name)) style.visible = !"hidden".equals(value) && !"collapse".equals(value);
+      }
+      return style;
+    }
+
+    private Stroke createStroke() {
+      return new BasicStroke(strokeWidth, lineCap, lineJoin, miterLimit, dashArray, dashOffset);
+    }
+  }
+
+  private static class Parser {
+    private final float myViewportWidth;
+    private final float myViewportHeight;
+    private final Map<String, Element> myIds = new HashMap<String, Element>();
+    private final List<Drawable> myDrawables = new ArrayList<Drawable>();
+    private final Set<Element> myUseStack = new HashSet<Element>();
+
+    private Parser(float viewportWidth, float viewportHeight) {
+      myViewportWidth = viewportWidth;
+      myViewportHeight = viewportHeight;
+    }
+
+    private void collectIds(@NotNull Element element) {
+      String id = element.getAttribute("id");
+      if (id.length() > 0) myIds.put(id, element);
+      for (Element child : getChildElements(element)) {
+        collectIds(child);
+      }
+    }
+
+    private void parseChildren(@NotNull Element parent, @NotNull Style style, @NotNull AffineTransform transform) {
+      for (Element child : getChildElements(parent)) {
+        parseElement(child, style, transform);
+      }
+    }
+
+    private void parseElement(@NotNull Element element, @NotNull Style parentStyle, @NotNull AffineTransform parentTransform) {
+      String name = getLocalName(element);
+      if ("defs".equals(name) || "linearGradient".equals(name) || "radialGradient".equals(name) || "symbol".equals(name)
+          || "clipPath".equals(name) || "mask".equals(name) || "title".equals(name) || "desc".equals(name)) {
+        return;
+      }
+
+      Style style = parentStyle.derive(element);
+      if (!style.visible && !"g".equals(name)) return;
+
+      AffineTransform transform = parentTransform;
+      if (element.hasAttribute("transform")) {
+        transform = new AffineTransform(parentTransform);
+        transform.concatenate(parseTransform(element.getAttribute("transform")));
+      }
+
+      if ("g".equals(name) || "svg".equals(name) || "a".equals(name)) {
+        if (style.visible) parseChildren(element, style, transform);
+        return;
+      }
+
+      if ("use".equals(name)) {
+        Element target = myIds.get(getReferenceId(getHref(element)));
+        if (target == null || !myUseStack.add(target)) return;
+        try {
+          AffineTransform useTransform = new AffineTransform(transform);
+          useTransform.translate(parseLength(element.getAttribute("x"), myViewportWidth, 0), parseLength(element.getAttribute("y"), myViewportHeight, 0));
+          if ("symbol".equals(getLocalName(target))) {
+            parseChildren(target, style.derive(target), useTransform);
+          }
+          else {
+            parseElement(target, style, useTransform);
+          }
+        }
+        finally {
+          myUseStack.remove(target);
+        }
+        return;
+      }
+
+      Shape shape = createShape(element, name, style);
+      if (shape == null) return;
+
+      Paint fill = "line".equals(name) ? null : createPaint(style.fill, style, shape);
+      Paint stroke = style.strokeWidth > 0 ? createPaint(style.stroke, style, shape) : null;
+      if (fill == null && stroke == null) return;
+
+      myDrawables.add(new Drawable(shape, transform, fill, style.opacity * style.fillOpacity,
+                                   stroke, style.opacity * style.strokeOpacity, stroke == null ? null : style.createStroke()));
+    }
+
+    @Nullable
+    private Shape createShape(@NotNull Element element, @NotNull String name, @NotNull Style style) {
+      if ("path".equals(name)) {
+        Path2D.Float path = parsePath(element.getAttribute("d"));
+        path.setWindingRule(style.fillRule);
+        return path;
+      }
+      if ("rect".equals(name)) {
+        float x = x(element, "x"), y = y(element, "y"), w = x(element, "width"), h = y(element, "height");
+        if (w <= 0 || h <= 0) return null;
+        float rx = element.hasAttribute("rx") ? x(element, "rx") : -1;
+        float ry = element.hasAttribute("ry") ? y(element, "ry") : -1;
+        if (rx < 0) rx = Math.max(ry, 0);
+        if (ry < 0) ry = rx;
+        rx = Math.min(rx, w / 2);
+        ry = Math.min(ry, h / 2);
+        return rx > 0 || ry > 0 ? new RoundRectangle2D.Float(x, y, w, h, 2 * rx, 2 * ry) : new Rectangle2D.Float(x, y, w, h);
+      }
+      if ("circle".equals(name)) {
+        float cx = x(element, "cx"), cy = y(element, "cy"), r = x(element, "r");
+        return r > 0 ? new Ellipse2D.Float(cx - r, cy - r, 2 * r, 2 * r) : null;
+      }
+      if ("ellipse".equals(name)) {
+        float cx = x(element, "cx"), cy = y(element, "cy"), rx = x(element, "rx"), ry = y(element, "ry");
+        return rx > 0 && ry > 0 ? new Ellipse2D.Float(cx - rx, cy - ry, 2 * rx, 2 * ry) : null;
+      }
+      if ("line".equals(name)) {
+        return new Line2D.Float(x(element, "x1"), y(element, "y1"), x(element, "x2"), y(element, "y2"));
+      }
+      if ("polyline".equals(name) || "polygon".equals(name)) {
+        float[] points = parseNumbers(element.getAttribute("points"));
+        if (points.length < 4) return null;
+        Path2D.Float path = new Path2D.Float(style.fillRule);
+        path.moveTo(points[0], points[1]);
+        for (int i = 2; i + 1 < points.length; i += 2) {
+          path.lineTo(points[i], points[i + 1]);
+        }
+        if ("polygon".equals(name)) path.closePath();
+        return path;
+      }
+      return null;
+    }
+
+    private float x(@NotNull Element element, @NotNull String attribute) {
+      return parseLength(element.getAttribute(attribute), myViewportWidth, 0);
+    }
+
+    private float y(@NotNull Element element, @NotNull String attribute) {
+      return parseLength(element.getAttribute(attribute), myViewportHeight, 0);
+    }
+
+    @Nullable
+    private Paint createPaint(@Nullable String value, @NotNull Style style, @NotNull Shape shape) {
+      if (value == null || value.length() == 0 || "none".equals(value)) return null;
+      if (value.startsWith("url(")) {
+        int end = value.indexOf(')');
+        Element gradient = end > 0 ? myIds.get(getReferenceId(value.substring(4, end).trim())) : null;
+        if (gradient != null) return createGradient(gradient, shape);
+        // fallback color after the reference, e.g. "url(#g) red"
+        return end > 0 ? createPaint(value.substring(end + 1).trim(), style, shape) : null;
+      }
+      if ("currentColor".equals(value)) {
+        return "currentColor".equals(style.color) ? Color.BLACK : createPaint(style.color, style, shape);
+      }
+      return parseColor(value);
+    }
+
+    @Nullable
+    private Paint createGradient(@NotNull Element gradient, @NotNull Shape shape) {
+      String name = getLocalName(gradient);
+      boolean linear = "linearGradient".equals(name);
+      if (!linear && !"radialGradient".equals(name)) return null;
+
+      List<Element> chain = new ArrayList<Element>();
+      for (Element e = gradient; e != null && !chain.contains(e); e = myIds.get(getReferenceId(getHref(e)))) {
+        chain.add(e);
+      }
+
+      List<Element> stops = new ArrayList<Element>();
+      for (Element e : chain) {
+        for (Element child : getChildElements(e)) {
+          if ("stop".equals(getLocalName(child))) stops.add(child);
+        }
+        if (!stops.isEmpty()) break;
+      }
+      if (stops.isEmpty()) return null;
+
+      float[] fractions = new float[stops.size()];
+      Color[] colors = new Color[stops.size()];
+      float last = 0;
+      for (int i = 0; i < stops.size(); i++) {
+        Element stop = stops.get(i);
+        Style stopStyle = new Style();
+        Map<String, String> properties = getStopProperties(stop);
+        Color color = parseColor(properties.containsKey("stop-color") ? properties.get("stop-color") : "black");
+        if (color == null) color = Color.BLACK;
+        float opacity = properties.containsKey("stop-opacity") ? parseOpacity(properties.get("stop-opacity")) : stopStyle.opacity;
+        colors[i] = new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.round(color.getAlpha() * opacity));
+
+        String offset = stop.getAttribute("offset").trim();
+        float fraction = Math.max(0, Math.min(1, parseLength(offset, 1, 0)));
+        // Java gradients require strictly increasing fractions
+        fraction = i == 0 ? fraction : Math.max(fraction, Math.nextUp(last));
+        fractions[i] = last = fraction;
+      }
+      if (stops.size() == 1 || fractions[fractions.length - 1] > 1) return colors[colors.length - 1];
+
+      boolean userSpace = "userSpaceOnUse".equals(getInherited(chain, "gradientUnits"));
+      float width = userSpace ? myViewportWidth : 1;
+      float height = userSpace ? myViewportHeight : 1;
+
+      AffineTransform transform = new AffineTransform();
+      if (!userSpace) {
+        Rectangle2D bounds = shape.getBounds2D();
+        if (bounds.getWidth() <= 0 || bounds.getHeight() <= 0) return colors[colors.length - 1];
+        transform.translate(bounds.getX(), bounds.getY());
+        transform.scale(bounds.getWidth(), bounds.getHeight());
+      }
+      String gradientTransform = getInherited(chain, "gradientTransform");
+      if (gradientTransform != null) transform.concatenate(parseTransform(gradientTransform));
+
+      String spread = getInherited(chain, "spreadMethod");
+      CycleMethod cycle = "reflect".equals(spread) ? CycleMethod.REFLECT : "repeat".equals(spread) ? CycleMethod.REPEAT : CycleMethod.NO_CYCLE;
+
+      try {
+        if (linear) {
+          Point2D start = new Point2D.Float(length(chain, "x1", width, 0), length(chain, "y1", height, 0));
+          Point2D end = new Point2D.Float(length(chain, "x2", width, userSpace ? width : 1), length(chain, "y2", height, 0));
+          if (start.equals(end)) return colors[colors.length - 1];
+          return new LinearGradientPaint(start, end, fractions, colors, cycle, ColorSpaceType.SRGB, transform);
+        }
+        float cx = length(chain, "cx", width, userSpace ? width / 2 : .5f);
+        float cy = length(chain, "cy", height, userSpace ? height / 2 : .5f);
+        float r = length(chain, "r", Math.min(width, height), userSpace ? Math.min(width, height) / 2 : .5f);
+        if (r <= 0) return colors[colors.length - 1];
+        float fx = length(chain, "fx", width, cx);
+        float fy = length(chain, "fy", height, cy);
+        return new RadialGradientPaint(new Point2D.Float(cx, cy), r, new Point2D.Float(fx, fy), fractions, colors, cycle,
+                                       ColorSpaceType.SRGB, transform);
+      }
+      catch (IllegalArgumentException e) {
+        return colors[colors.length - 1];
+      }
+    }
+
+    private static Map<String, String> getStopProperties(@NotNull Element stop) {
+      Map<String, String> properties = new HashMap<String, String>();
+      if (stop.hasAttribute("stop-color")) properties.put("stop-color", stop.getAttribute("stop-color").trim());
+      if (stop.hasAttribute("stop-opacity")) properties.put("stop-opacity", stop.getAttribute("stop-opacity").trim());
+      for (String declaration : stop.getAttribute("style").split(";")) {
+        int colon = declaration.indexOf(':');
+        if (colon > 0) properties.put(declaration.substring(0, colon).trim(), declaration.substring(colon + 1).trim());
+      }
+      return properties;
+    }
+
+    private static float length(@NotNull List<Element> chain, @NotNull String attribute, float percentBase, float defaultValue) {
+      String value = getInherited(chain, attribute);
+      return value == null ? defaultValue : parseLength(value, percentBase, defaultValue);
+    }
+
+    @Nullable
+    private static String getInherited(@NotNull List<Element> chain, @NotNull String attribute) {
+      for (Element element : chain) {
+        if (element.hasAttribute(attribute)) return element.getAttribute(attribute).trim();
+      }
+      return null;
+    }
+  }
+
+  @NotNull
+  private static List<Element> getChildElements(@NotNull Element element) {
+    NodeList nodes = element.getChildNodes();
+    List<Element> children = new ArrayList<Element>(nodes.getLength());
+    for (int i = 0; i < nodes.getLength(); i++) {
+      if (nodes.item(i) instanceof Element) children.add((Element)nodes.item(i));
+    }
+    return children;
+  }
+
+  @Nullable
+  private static String getHref(@NotNull Element element) {
+    String href = element.getAttributeNS("http://www.w3.org/1999/xlink", "href");
+    if (href == null || href.length() == 0) href = element.getAttribute("href");
+    if (href == null || href.length() == 0) href = element.getAttribute("xlink:href");
+    return href;
+  }
+
+  @Nullable
+  private static String getReferenceId(@Nullable String reference) {
+    if (reference == null || !reference.startsWith("#")) return null;
+    return reference.substring(1);
+  }
+
+  private static float parseOpacity(@NotNull String value) {
+    return Math.max(0, Math.min(1, parseLength(value, 1, 1)));
+  }
+
+  /**
+   * Parses a number with an optional unit; percentages are relative to {@code percentBase}, other units are treated as pixels.
+   */
+  static float parseLength(@Nullable String value, float percentBase, float defaultValue) {
+    if (value == null) return defaultValue;
+    value = value.trim();
+    if (value.length() == 0) return defaultValue;
+    NumberScanner scanner = new NumberScanner(value);
+    if (!scanner.hasNumber()) return defaultValue;
+    float number = scanner.nextFloat();
+    return scanner.myPosition < value.length() && value.charAt(scanner.myPosition) == '%' ? number * percentBase / 100 : number;
+  }
+
+  @NotNull
+  static float[] parseNumbers(@Nullable String value) {
+    if (value == null) return new float[0];
+    NumberScanner scanner = new NumberScanner(value);
+    float[] result = new float[8];
+    int count = 0;
+    while (scanner.hasNumber()) {
+      if (count == result.length) result = Arrays.copyOf(result, 2 * count);
+      result[count++] = scanner.nextFloat();
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  @Nullable
+  private static float[] parseDashArray(@NotNull String value) {
+    if ("none".equals(value)) return null;
+    float[] dashes = parseNumbers(value);
+    float total = 0;
+    for (float dash : dashes) {
+      if (dash < 0) return null;
+      total += dash;
+    }
+    if (total <= 0) return null;
+    if (dashes.length % 2 == 1) {
+      float[] doubled = Arrays.copyOf(dashes, 2 * dashes.length);
+      System.arraycopy(dashes, 0, doubled, dashes.length, dashes.length);
+      dashes = doubled;
+    }
+    return dashes;
+  }
+
+  @NotNull
+  static AffineTransform parseTransform(@NotNull String value) {
+    AffineTransform result = new AffineTransform();
+    int position = 0;
+    while (true) {
+      int open = value.indexOf('(', position);
+      int close = open < 0 ? -1 : value.indexOf(')', open);
+      if (close < 0) break;
+      String name = value.substring(position, open).replace(',', ' ').trim();
+      float[] args = parseNumbers(value.substring(open + 1, close));
+      position = close + 1;
+
+      if ("matrix".equals(name) && args.length == 6) {
+        result.concatenate(new AffineTransform(args[0], args[1], args[2], args[3], args[4], args[5]));
+      }
+      else if ("translate".equals(name) && args.length >= 1) {
+        result.translate(args[0], args.length > 1 ? args[1] : 0);
+      }
+      else if ("scale".equals(name) && args.length >= 1) {
+        result.scale(args[0], args.length > 1 ? args[1] : args[0]);
+      }
+      else if ("rotate".equals(name) && args.length >= 1) {
+        if (args.length >= 3) {
+          result.rotate(Math.toRadians(args[0]), args[1], args[2]);
+        }
+        else {
+          result.rotate(Math.toRadians(args[0]));
+        }
+      }
+      else if ("skewX".equals(name) && args.length == 1) {
+        result.shear(Math.tan(Math.toRadians(args[0])), 0);
+      }
+      else if ("skewY".equals(name) && args.length == 1) {
+        result.shear(0, Math.tan(Math.toRadians(args[0])));
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  static Color parseColor(@NotNull String value) {
+    value = value.trim();
+    try {
+      if (value.startsWith("#")) {
+        if (value.length() == 4) {
+          int rgb = Integer.parseInt(value.substring(1), 16);
+          return new Color(17 * (rgb >> 8 & 0xF), 17 * (rgb >> 4 & 0xF), 17 * (rgb & 0xF));
+        }
+        if (value.length() == 7) return new Color(Integer.parseInt(value.substring(1), 16));
+        return null;
+      }
+      if (value.startsWith("rgb")) {
+        int open = value.indexOf('(');
+        int close = value.indexOf(')');
+        if (open < 0 || close < open) return null;
+        String[] parts = value.substring(open + 1, close).split(",");
+        if (parts.length < 3) return null;
+        int[] rgb = new int[3];
+        for (int i = 0; i < 3; i++) {
+          String part = parts[i].trim();
+          float component = parseLength(part, 255, 0);
+          rgb[i] = Math.max(0, Math.min(255, Math.round(component)));
+        }
+        int alpha = parts.length > 3 ? Math.round(255 * parseOpacity(parts[3].trim())) : 255;
+        return new Color(rgb[0], rgb[1], rgb[2], alpha);
+      }
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+    Integer rgb = NAMED_COLORS.get(value.toLowerCase(Locale.US));
+    if (rgb == null) return null;
+    return rgb == -1 ? new Color(0, 0, 0, 0) : new Color(rgb);
+  }
+
+  private static final Map<String, Integer> NAMED_COLORS = new HashMap<String, Integer>();
+
+  static {
+    NAMED_COLORS.put("black", 0x000000);
+    NAMED_COLORS.put("white", 0xFFFFFF);
+    NAMED_COLORS.put("red", 0xFF0000);
+    NAMED_COLORS.put("lime", 0x00FF00);
+    NAMED_COLORS.put("green", 0x008000);
+    NAMED_COLORS.put("blue", 0x0000FF);
+    NAMED_COLORS.put("yellow", 0xFFFF00);
+    NAMED_COLORS.put("cyan", 0x00FFFF);
+    NAMED_COLORS.put("aqua", 0x00FFFF);
+    NAMED_COLORS.put("magenta", 0xFF00FF);
+    NAMED_COLORS.put("fuchsia", 0xFF00FF);
+    NAMED_COLORS.put("gray", 0x808080);
+    NAMED_COLORS.put("grey", 0x808080);
+    NAMED_COLORS.put("silver", 0xC0C0C0);
+    NAMED_COLORS.put("maroon", 0x800000);
+    NAMED_COLORS.put("olive", 0x808000);
+    NAMED_COLORS.put("navy", 0x000080);
+    NAMED_COLORS.put("purple", 0x800080);
+    NAMED_COLORS.put("teal", 0x008080);
+    NAMED_COLORS.put("orange", 0xFFA500);
+    NAMED_COLORS.put("transparent", -1);
+  }
+
+  @NotNull
+  static Path2D.Float parsePath(@NotNull String data) {
+    Path2D.Float path = new Path2D.Float();
+    NumberScanner scanner = new NumberScanner(data);
+    float x = 0, y = 0;             // current point
+    float startX = 0, startY = 0;   // start of the current subpath
+    float ctrlX = 0, ctrlY = 0;     // last control point for S/s and T/t
+    char previous = ' ';
+    char command = ' ';
+
+    while (true) {
+      char next = scanner.nextCommand();
+      if (next != 0) {
+        command = next;
+      }
+      else if (!scanner.hasNumber() || command == ' ' || command == 'Z' || command == 'z') {
+        break;
+      }
+      boolean relative = Character.isLowerCase(command);
+      float dx = relative ? x : 0;
+      float dy = relative ? y : 0;
+
+      switch (Character.toUpperCase(command)) {
+        case 'M':
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.moveTo(x, y);
+          startX = x;
+          startY = y;
+          // subsequent pairs are implicit lineto commands
+          command = relative ? 'l' : 'L';
+          break;
+        case 'L':
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.lineTo(x, y);
+          break;
+        case 'H':
+          x = scanner.nextFloat() + dx;
+          path.lineTo(x, y);
+          break;
+        case 'V':
+          y = scanner.nextFloat() + dy;
+          path.lineTo(x, y);
+          break;
+        case 'C': {
+          float x1 = scanner.nextFloat() + dx, y1 = scanner.nextFloat() + dy;
+          ctrlX = scanner.nextFloat() + dx;
+          ctrlY = scanner.nextFloat() + dy;
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.curveTo(x1, y1, ctrlX, ctrlY, x, y);
+          break;
+        }
+        case 'S': {
+          boolean smooth = "CcSs".indexOf(previous) >= 0;
+          float x1 = smooth ? 2 * x - ctrlX : x, y1 = smooth ? 2 * y - ctrlY : y;
+          ctrlX = scanner.nextFloat() + dx;
+          ctrlY = scanner.nextFloat() + dy;
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.curveTo(x1, y1, ctrlX, ctrlY, x, y);
+          break;
+        }
+        case 'Q':
+          ctrlX = scanner.nextFloat() + dx;
+          ctrlY = scanner.nextFloat() + dy;
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.quadTo(ctrlX, ctrlY, x, y);
+          break;
+        case 'T': {
+          boolean smooth = "QqTt".indexOf(previous) >= 0;
+          ctrlX = smooth ? 2 * x - ctrlX : x;
+          ctrlY = smooth ? 2 * y - ctrlY : y;
+          x = scanner.nextFloat() + dx;
+          y = scanner.nextFloat() + dy;
+          path.quadTo(ctrlX, ctrlY, x, y);
+          break;
+        }
+        case 'A': {
+          float rx = scanner.nextFloat(), ry = scanner.nextFloat(), angle = scanner.nextFloat();
+          boolean largeArc = scanner.nextFlag(), sweep = scanner.nextFlag();
+          float x2 = scanner.nextFloat() + dx, y2 = scanner.nextFloat() + dy;
+          arcTo(path, x, y, rx, ry, angle, largeArc, sweep, x2, y2);
+          x = x2;
+          y = y2;
+          break;
+        }
+        case 'Z':
+          path.closePath();
+          x = startX;
+          y = startY;
+          break;
+        default:
+          return path;
+      }
+      previous = command;
+      if (scanner.myError) break;
+    }
+    return path;
+  }
+
+  /**
+   * Appends an SVG elliptical arc, converting its endpoint parametrization to the center one (SVG 1.1, F.6.5).
+   */
+  private static void arcTo(@NotNull Path2D.Float path, float x0, float y0, float rx, float ry, float angle,
+                            boolean largeArc, boolean sweep, float x, float y) {
+    if (x0 == x && y0 == y) return;
+    if (rx == 0 || ry == 0) {
+      path.lineTo(x, y);
+      return;
+    }
+    rx = Math.abs(rx);
+    ry = Math.abs(ry);
+
+    double radians = Math.toRadians(angle % 360);
+    double cos = Math.cos(radians);
+    double sin = Math.sin(radians);
+    double dx2 = (x0 - x) / 2.0;
+    double dy2 = (y0 - y) / 2.0;
+    double x1 = cos * dx2 + sin * dy2;
+    double y1 = -sin * dx2 + cos * dy2;
+
+    double prx = rx * rx, pry = ry * ry, px1 = x1 * x1, py1 = y1 * y1;
+    double radiiCheck = px1 / prx + py1 / pry;
+    if (radiiCheck > 1) {
+      rx *= Math.sqrt(radiiCheck);
+      ry *= Math.sqrt(radiiCheck);
+      prx = rx * rx;
+      pry = ry * ry;
+    }
+
+    double sign = largeArc == sweep ? -1 : 1;
+    double sq = (prx * pry - prx * py1 - pry * px1) / (prx * py1 + pry * px1);
+    double coef = sign * Math.sqrt(Math.max(0, sq));
+    double cx1 = coef * (rx * y1 / ry);
+    double cy1 = coef * -(ry * x1 / rx);
+
+    double cx = (x0 + x) / 2.0 + (cos * cx1 - sin * cy1);
+    double cy = (y0 + y) / 2.0 + (sin * cx1 + cos * cy1);
+
+    double ux = (x1 - cx1) / rx, uy = (y1 - cy1) / ry;
+    double vx = (-x1 - cx1) / rx, vy = (-y1 - cy1) / ry;
+    double start = Math.toDegrees((uy < 0 ? -1 : 1) * Math.acos(clamp(ux / Math.sqrt(ux * ux + uy * uy))));
+    double extent = Math.toDegrees((ux * vy - uy * vx < 0 ? -1 : 1) *
+                                   Math.acos(clamp((ux * vx + uy * vy) / Math.sqrt((ux * ux + uy * uy) * (vx * vx + vy * vy)))));
+    if (!sweep && extent > 0) {
+      extent -= 360;
+    }
+    else if (sweep && extent < 0) {
+      extent += 360;
+    }
+
+    // Arc2D angles grow counter-clockwise in the y-up sense, so both are negated
+    Arc2D.Double arc = new Arc2D.Double(cx - rx, cy - ry, 2 * rx, 2 * ry, -start, -extent, Arc2D.OPEN);
+    path.append(AffineTransform.getRotateInstance(radians, cx, cy).createTransformedShape(arc), true);
+  }
+
+  private static double clamp(double value) {
+    return Math.max(-1, Math.min(1, value));
+  }
+
+  /**
+   * Scans numbers and commands of SVG attribute values, where separators are optional: {@code M1.5.5-2e1,3z}.
+   */
+  private static class NumberScanner {
+    private final String myText;
+    private int myPosition;
+    private boolean myError;
+
+    private NumberScanner(@NotNull String text) {
+      myText = text;
+    }
+
+    private void skipSeparators() {
+      while (myPosition < myText.length()) {
+        char c = myText.charAt(myPosition);
+        if (c != ',' && !Character.isWhitespace(c)) break;
+        myPosition++;
+      }
+    }
+
+    private boolean hasNumber() {
+      skipSeparators();
+      if (myPosition >= myText.length()) return false;
+      char c = myText.charAt(myPosition);
+      return c >= '0' && c <= '9' || c == '.' || c == '-' || c == '+';
+    }
+
+    /**
+     * @return the next path command letter, or {@code 0} if a number follows
+     */
+    private char nextCommand() {
+      skipSeparators();
+      if (myPosition >= myText.length()) return 0;
+      char c = myText.charAt(myPosition);
+      if ("MmLlHhVvCcSsQqTtAaZz".indexOf(c) >= 0) {
+        myPosition++;
+        return c;
+      }
+      if (!hasNumber()) {
+        // unknown command, stop parsing like browsers do
+        myPosition = myText.length();
+      }
+      return 0;
+    }
+
+    private boolean nextFlag() {
+      skipSeparators();
+      if (myPosition < myText.length()) {
+        char c = myText.charAt(myPosition);
+        if (c == '0' || c == '1') {
+          myPosition++;
+          return c == '1';
+        }
+      }
+      myError = true;
+      return false;
+    }
+
+    private float nextFloat() {
+      if (!hasNumber()) {
+        myError = true;
+        return 0;
+      }
+      int start = myPosition;
+      int end = start;
+      int length = myText.length();
+      if (myText.charAt(end) == '-' || myText.charAt(end) == '+') end++;
+      boolean dot = false;
+      while (end < length) {
+        char c = myText.charAt(end);
+        if (c == '.' && !dot) {
+          dot = true;
+        }
+        else if (c < '0' || c > '9') {
+          break;
+        }
+        end++;
+      }
+      if (end < length && (myText.charAt(end) == 'e' || myText.charAt(end) == 'E')) {
+        int exponent = end + 1;
+        if (exponent < length && (myText.charAt(exponent) == '-' || myText.charAt(exponent) == '+')) exponent++;
+        if (exponent < length && Character.isDigit(myText.charAt(exponent))) {
+          end = exponent;
+          while (end < length && Character.isDigit(myText.charAt(end))) end++;
+        }
+      }
+      myPosition = end;
+      try {
+        return Float.parseFloat(myText.substring(start, end));
+      }
+      catch (NumberFormatException e) {
+        myError = true;
+        return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.IconLoaderStats;
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.IconLoaderStats.Phase;
+import com.bulenkov.iconloader.util.IconEvents.IconEvent;
+import com.bulenkov.iconloader.util.IconEvents.Kind;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads SVG icons. Parsed documents are cached per URL and rasters per URL and scale,
+ * so an icon is parsed once and rasterized once for every scale it is painted at.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class SVGLoader {
+  private static final ConcurrentMap<String, SVGDocument> ourDocuments = new ConcurrentSoftValueHashMap<String, SVGDocument>();
+  private static final SoftLRUCache<String, Image> ourRasters = new SoftLRUCache<String, Image>();
+
+  private SVGLoader() {
+  }
+
+  @NotNull
+  public static Image load(@NotNull URL url, float scale) throws IOException {
+    return load(url, URLUtil.openStream(url), scale);
+  }
+
+  /**
+   * Rasterizes the SVG read from {@code stream} at {@code scale}. The stream is always closed.
+   *
+   * @param url the source of the stream, used as the cache key; {@code null} disables caching
+   */
+  @NotNull
+  public static Image load(@Nullable URL url, @NotNull InputStream stream, float scale) throws IOException {
+    String key = url == null ? null : url.toString();
+    try {
+      if (key != null) {
+        Image image = ourRasters.get(key + "@" + scale);
+        if (image != null) return image;
+      }
+
+      IconEvent event = IconEvents.begin(Kind.DECODE);
+      long start = System.nanoTime();
+      SVGDocument document = key == null ? null : ourDocuments.get(key);
+      if (document == null) {
+        document = SVGDocument.parse(stream);
+        if (key != null) ourDocuments.put(key, document);
+      }
+      Image image = document.render(scale);
+      IconLoaderStats.record(Phase.DECODE, start);
+      IconLoaderStats.add(Counter.BYTES_DECODED, 4L * image.getWidth(null) * image.getHeight(null));
+      IconEvents.end(event, key, null, -1, image.getWidth(null), image.getHeight(null));
+
+      if (key != null) ourRasters.put(key + "@" + scale, image);
+      return image;
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  public static void clearCache() {
+    ourDocuments.clear();
+    ourRasters.clear();
+  }
+}
@@ -644,6 +644,29 @@ public class Scalr {
 			if (op == null)
 				continue;
 
+			/*
+			 * Point ops following each other are fused into per-channel lookup
+			 * tables and applied in a single pass, instead of allocating and
+			 * traversing an interim image for every one of them.
+			 */
+			int runEnd = FusedPointOps.findRun(ops, i);
+			if (runEnd > i) {
+				if (DEBUG)
+					log(1, "Applying %d fused point ops...", runEnd - i);
+
+				BufferedImage fused = FusedPointOps.apply(src, ops, i, runEnd);
+				if (hasReassignedSrc)
+					src.flush();
+				src = fused;
+				hasReassignedSrc = true;
+				i = runEnd - 1;
+
+				if (DEBUG)
+					log(1, "Applied fused point ops in %d ms",
+							System.currentTimeMillis() - subT);
+				continue;
+			}
+
 			if (DEBUG)
 				log(1, "Applying BufferedImageOp [class=%s, toString=%s]...",
 						op.getClass(), op.toString());
@@ -1644,6 +1667,8 @@ public class Scalr {
 		if (DEBUG)
 			log(1, "Using Scaling Method: %s", scalingMethod);
 
+		IconEvents.IconEvent event = IconEvents.begin(IconEvents.Kind.SCALE);
+
 		// Now we scale the image
 		if (scalingMethod == Scalr.Method.SPEED) {
 			result = scaleImage(src, targetWidth, targetHeight,
@@ -1699,6 +1724,9 @@ public class Scalr {
 			}
 		}
 
+		IconEvents.end(event, null, scalingMethod.name(), 4L * targetWidth
+				* targetHeight, targetWidth, targetHeight);
+
 		if (DEBUG)
 			log(0, "Resized Image in %d ms", System.currentTimeMillis() - t);
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache which keeps its {@code hardSize} most recently used values strongly reachable and the rest softly.
+ * A full GC clears only the values that dropped out of the hard core, so icons in active use are never
+ * reloaded all at once. A soft value that is accessed again is promoted back to the core.
+ * <p/>
+ * A core of 64 or more values is split into stripes by key hash, each with its own lock
+ * and its share of the size, so concurrent lookups of different keys rarely contend. The least recently used
+ * order is then kept per stripe.
+ * Null keys and values are NOT allowed.
+ *
+ * @author Konstantin Bulenkov
+ */
+public final class SoftLRUCache<K, V> {
+  /**
+   * Hard core size of the icon caches, {@code -Dicons.cache.hard.size}.
+   */
+  public static final int DEFAULT_HARD_SIZE = Integer.getInteger("icons.cache.hard.size", 128);
+  private static final int STRIPED_HARD_SIZE = 64;
+  private static final int STRIPES = 16;
+
+  private final ConcurrentSoftValueHashMap<K, V> mySoftMap = new ConcurrentSoftValueHashMap<K, V>();
+  private final Stripe<K, V>[] myStripes;
+
+  public SoftLRUCache() {
+    this(DEFAULT_HARD_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  public SoftLRUCache(int hardSize) {
+    int stripes = hardSize >= STRIPED_HARD_SIZE ? STRIPES : 1;
+    myStripes = (Stripe<K, V>[])new Stripe<?, ?>[stripes];
+    for (int i = 0; i < stripes; i++) {
+      myStripes[i] = new Stripe<K, V>(hardSize / stripes + (i < hardSize % stripes ? 1 : 0));
+    }
+  }
+
+  @Nullable
+  public V get(@NotNull K key) {
+    Stripe<K, V> stripe = getStripe(key);
+    synchronized (stripe) {
+      V value = stripe.myValues.get(key);
+      if (value == null) {
+        value = mySoftMap.get(key);
+        if (value != null) stripe.put(key, value);
+      }
+      return value;
+    }
+  }
+
+  public void put(@NotNull K key, @NotNull V value) {
+    Stripe<K, V> stripe = getStripe(key);
+    synchronized (stripe) {
+      mySoftMap.put(key, value);
+      stripe.put(key, value);
+    }
+  }
+
+  public void remove(@NotNull K key) {
+    Stripe<K, V> stripe = getStripe(key);
+    synchronized (stripe) {
+      mySoftMap.remove(key);
+      stripe.myValues.remove(key);
+    }
+  }
+
+  public void clear() {
+    for (Stripe<K, V> stripe : myStripes) {
+      synchronized (stripe) {
+        stripe.myValues.clear();
+      }
+    }
+    mySoftMap.clear();
+  }
+
+  /**
+   * @return number of values kept strongly reachable
+   */
+  public int getHardSize() {
+    int size = 0;
+    for (Stripe<K, V> stripe : myStripes) {
+      synchronized (stripe) {
+        size += stripe.myValues.size();
+      }
+    }
+    return size;
+  }
+
+  public int size() {
+    return mySoftMap.size();
+  }
+
+  @NotNull
+  private Stripe<K, V> getStripe(@NotNull K key) {
+    int hash = key.hashCode();
+    return myStripes[(hash ^ (hash >>> 16)) & (myStripes.length - 1)];
+  }
+
+  private static final class Stripe<K, V> {
+    private final int myHardSize;
+    // in access order
+    private final LinkedHashMap<K, V> myValues = new LinkedHashMap<K, V>(16, 0.75f, true);
+
+    private Stripe(int hardSize) {
+      myHardSize = hardSize;
+    }
+
+    private void put(@NotNull K key, @NotNull V value) {
+      myValues.put(key, value);
+      if (myValues.size() > myHardSize) {
+        // the eldest value stays in the soft map
+        Iterator<K> eldest = myValues.keySet().iterator();
+        eldest.next();
+        eldest.remove();
+      }
+    }
+  }
+}
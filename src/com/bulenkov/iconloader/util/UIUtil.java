@@ -133,15 +133,15 @@ public class UIUtil {
 
   public static void drawImage(Graphics g, Image image, int x, int y, ImageObserver observer) {
     if (image instanceof JBHiDPIScaledImage) {
-      final Graphics2D newG = (Graphics2D) g.create(x, y, image.getWidth(observer), image.getHeight(observer));
-      newG.scale(0.5, 0.5);
       Image img = ((JBHiDPIScaledImage) image).getDelegate();
       if (img == null) {
         img = image;
       }
-      newG.drawImage(img, 0, 0, observer);
-      newG.scale(1, 1);
-      newG.dispose();
+      // the wrapper has the logical size: draw the double-sized raster at half scale into exactly these bounds,
+      // which also clips it to the icon, so no Graphics copy is created and disposed per paint
+      int width = image.getWidth(observer);
+      int height = image.getHeight(observer);
+      g.drawImage(img, x, y, x + width, y + height, 0, 0, 2 * width, 2 * height, observer);
     } else {
       g.drawImage(image, x, y, observer);
     }
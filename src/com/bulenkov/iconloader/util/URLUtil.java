@@ -21,7 +21,6 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -183,17 +182,7 @@ public class URLUtil {
    */
 
   public static byte[] getBytesFromDataUri(String dataUrl) {
-    Matcher matcher = DATA_URI_PATTERN.matcher(StringUtil.stripQuotesAroundValue(dataUrl));
-    if (matcher.matches()) {
-      try {
-        String content = matcher.group(4);
-        final Charset charset = Charset.forName("UTF-8");
-        final byte[] bytes = content.getBytes(charset);
-        return ";base64".equalsIgnoreCase(matcher.group(3)) ? Base64Converter.decode(bytes) : bytes;
-      } catch (IllegalArgumentException e) {
-        return null;
-      }
-    }
-    return null;
+    DataUri uri = DataUri.parse(dataUrl);
+    return uri == null ? null : uri.toByteArray();
   }
 }
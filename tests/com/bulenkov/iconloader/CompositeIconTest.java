@@ -0,0 +1,213 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.LayeredIcon;
+import com.bulenkov.iconloader.util.RowIcon;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class CompositeIconTest extends TestCase {
+  public void testLayersPaintedOnce() {
+    CountingIcon base = new CountingIcon(Color.RED, 16);
+    CountingIcon badge = new CountingIcon(Color.BLUE, 8);
+    LayeredIcon icon = new LayeredIcon(base, badge);
+
+    paint(icon);
+    paint(icon);
+    assertEquals(1, base.myPaintCount);
+    assertEquals(1, badge.myPaintCount);
+  }
+
+  public void testLayerChangesInvalidate() {
+    CountingIcon base = new CountingIcon(Color.RED, 16);
+    CountingIcon badge = new CountingIcon(Color.BLUE, 8);
+    LayeredIcon icon = new LayeredIcon(base, null);
+    assertEquals(Color.RED.getRGB(), paint(icon).getRGB(1, 1));
+
+    icon.setIcon(badge, 1);
+    assertEquals(Color.BLUE.getRGB(), paint(icon).getRGB(1, 1));
+    assertEquals(2, base.myPaintCount);
+
+    icon.setLayerEnabled(1, false);
+    assertEquals(Color.RED.getRGB(), paint(icon).getRGB(1, 1));
+    assertEquals(3, base.myPaintCount);
+  }
+
+  public void testNestedCompositeChangeInvalidates() {
+    CountingIcon first = new CountingIcon(Color.RED, 8);
+    RowIcon row = new RowIcon(first, new CountingIcon(Color.GREEN, 8));
+    LayeredIcon icon = new LayeredIcon(row);
+    assertEquals(16, icon.getIconWidth());
+    assertEquals(Color.GREEN.getRGB(), paint(icon).getRGB(9, 1));
+
+    row.setIcon(new CountingIcon(Color.BLUE, 8), 1);
+    assertEquals(Color.BLUE.getRGB(), paint(icon).getRGB(9, 1));
+    assertEquals(2, first.myPaintCount);
+  }
+
+  public void testRecomputedLazyLayerInvalidates() {
+    final Color[] color = {Color.RED};
+    IconLoader.LazyIcon lazy = new IconLoader.LazyIcon() {
+      @Override
+      protected Icon compute() {
+        return new CountingIcon(color[0], 16);
+      }
+    };
+    RowIcon icon = new RowIcon(lazy);
+    assertEquals(Color.RED.getRGB(), paint(icon).getRGB(1, 1));
+
+    color[0] = Color.BLUE;
+    assertEquals(Color.RED.getRGB(), paint(icon).getRGB(1, 1));
+    // recomputes the lazy icon only
+    IconPathPatcher patcher = new IconPathPatcher() {
+      @Override
+      public Map<String, String> getPathMappings() {
+        return Collections.emptyMap();
+      }
+    };
+    IconLoader.installPathPatcher(patcher);
+    try {
+      assertEquals(Color.BLUE.getRGB(), paint(icon).getRGB(1, 1));
+    }
+    finally {
+      IconLoader.removePathPatcher(patcher);
+    }
+  }
+
+  public void testPatchedLayerInvalidates() {
+    Icon print = IconLoader.findIcon("/icons/print.png", getClass());
+    Icon preview = IconLoader.findIcon("/icons/printPreview.png", getClass());
+    assertNotNull(print);
+    assertNotNull(preview);
+    LayeredIcon icon = new LayeredIcon(print);
+    int[] printPixels = getPixels(paint(icon));
+    int[] previewPixels = getPixels(paint(new LayeredIcon(preview)));
+    assertFalse(Arrays.equals(printPixels, previewPixels));
+
+    IconPathPatcher patcher = new IconPathPatcher() {
+      @Override
+      public Map<String, String> getPathMappings() {
+        return Collections.singletonMap("/icons/print.png", "/icons/printPreview.png");
+      }
+    };
+    IconLoader.installPathPatcher(patcher);
+    try {
+      assertTrue(Arrays.equals(previewPixels, getPixels(paint(icon))));
+    }
+    finally {
+      IconLoader.removePathPatcher(patcher);
+    }
+    assertTrue(Arrays.equals(printPixels, getPixels(paint(icon))));
+  }
+
+  public void testRepaintDoesNotResolveLayers() throws Exception {
+    final Icon layer = new IconLoader.CachedImageIcon(getClass().getResource("/icons/print.png"));
+    final LayeredIcon icon = new LayeredIcon(layer, new CountingIcon(Color.BLUE, 8));
+    paint(icon);
+
+    // resolving the layer would wait for its monitor
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        synchronized (layer) {
+          locked.countDown();
+          try {
+            release.await();
+          }
+          catch (InterruptedException ignore) {
+          }
+        }
+      }
+    };
+    holder.start();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertTrue(locked.await(10, TimeUnit.SECONDS));
+      executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          // not paint(icon), the size of the icon is resolved from its layers
+          @SuppressWarnings("UndesirableClassUsage")
+          BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+          Graphics2D g = image.createGraphics();
+          icon.paintIcon(null, g, 0, 0);
+          g.dispose();
+          return image;
+        }
+      }).get(10, TimeUnit.SECONDS);
+    }
+    finally {
+      release.countDown();
+      holder.join();
+      executor.shutdownNow();
+    }
+  }
+
+  private static BufferedImage paint(Icon icon) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    icon.paintIcon(null, g, 0, 0);
+    g.dispose();
+    return image;
+  }
+
+  private static int[] getPixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  private static class CountingIcon implements Icon {
+    private final Color myColor;
+    private final int mySize;
+    private int myPaintCount;
+
+    private CountingIcon(Color color, int size) {
+      myColor = color;
+      mySize = size;
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+      myPaintCount++;
+      g.setColor(myColor);
+      g.fillRect(x, y, mySize, mySize);
+    }
+
+    @Override
+    public int getIconWidth() {
+      return mySize;
+    }
+
+    @Override
+    public int getIconHeight() {
+      return mySize;
+    }
+  }
+}
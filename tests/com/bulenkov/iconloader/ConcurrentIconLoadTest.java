@@ -0,0 +1,92 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.IconLoaderStats.Phase;
+import com.bulenkov.iconloader.util.ImageLoader;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class ConcurrentIconLoadTest extends TestCase {
+  private static final int THREADS = 32;
+
+  public void testConcurrentLoadsDecodeOnce() throws Exception {
+    // large and incompressible, so that the first decode is still running when the other threads arrive
+    BufferedImage noise = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+    Random random = new Random(42);
+    for (int y = 0; y < noise.getHeight(); y++) {
+      for (int x = 0; x < noise.getWidth(); x++) {
+        noise.setRGB(x, y, random.nextInt());
+      }
+    }
+    File file = File.createTempFile("noise", ".png");
+    try {
+      ImageIO.write(noise, "png", file);
+      final URL url = file.toURI().toURL();
+      long decodes = countDecodes();
+
+      final CyclicBarrier start = new CyclicBarrier(THREADS);
+      ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+      try {
+        List<Future<Image>> images = new ArrayList<Future<Image>>();
+        for (int i = 0; i < THREADS; i++) {
+          images.add(pool.submit(new Callable<Image>() {
+            @Override
+            public Image call() throws Exception {
+              start.await();
+              return ImageLoader.loadFromUrl(url, false, false);
+            }
+          }));
+        }
+        for (Future<Image> image : images) {
+          assertEquals(1024, image.get(30, TimeUnit.SECONDS).getWidth(null));
+        }
+      }
+      finally {
+        pool.shutdownNow();
+      }
+      assertEquals(1, countDecodes() - decodes);
+
+      // nothing is left pinned, the next load decodes again
+      assertNotNull(ImageLoader.loadFromUrl(url, false, false));
+      assertEquals(2, countDecodes() - decodes);
+    }
+    finally {
+      assertTrue(file.delete());
+    }
+  }
+
+  private static long countDecodes() {
+    long count = 0;
+    for (long bucket : IconLoaderStats.getInstance().getHistogram(Phase.DECODE)) {
+      count += bucket;
+    }
+    return count;
+  }
+}
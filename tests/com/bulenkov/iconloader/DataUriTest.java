@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.Base64Converter;
+import com.bulenkov.iconloader.util.DataUri;
+import com.bulenkov.iconloader.util.URLUtil;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class DataUriTest extends TestCase {
+  public void testBase64MatchesConverter() {
+    Random random = new Random(7);
+    for (int length = 0; length < 64; length++) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      String encoded = Base64Converter.encode(bytes);
+      assertTrue(Arrays.equals(bytes, URLUtil.getBytesFromDataUri("data:application/octet-stream;base64," + encoded)));
+
+      // wrapped lines and missing padding
+      String wrapped = encoded.replaceAll("(.{8})", "$1\n ").replace("=", "");
+      DataUri uri = DataUri.parse("'data:application/octet-stream;BASE64," + wrapped + "'");
+      assertNotNull(uri);
+      assertTrue(Arrays.equals(bytes, uri.toByteArray()));
+    }
+  }
+
+  public void testHeader() {
+    DataUri uri = DataUri.parse("data:,Hello%20world");
+    assertNotNull(uri);
+    assertEquals("text/plain", uri.getMimeType());
+    assertEquals("Hello%20world", new String(uri.toByteArray()));
+
+    uri = DataUri.parse("data:Image/SVG+xml;charset=utf-8,<svg/>");
+    assertNotNull(uri);
+    assertTrue(uri.isSvg());
+
+    assertNull(DataUri.parse("data:image/png;base64"));
+    assertNull(DataUri.parse("data:image/png;base64,AB*C"));
+    assertNull(DataUri.parse("data:image/png;base64,QUJD=QUJD"));
+    assertNull(DataUri.parse("http://example.com/icon.png"));
+  }
+
+  public void testFindIconCachesByContent() throws Exception {
+    String encoded = Base64Converter.encode(readIcon());
+    Icon icon = IconLoader.findIcon("data:image/png;base64," + encoded, getClass());
+    assertNotNull(icon);
+    assertEquals(16, icon.getIconWidth());
+    assertEquals(16, icon.getIconHeight());
+
+    Icon same = IconLoader.findIcon("\"data:image/png;base64," + encoded.replaceAll("(.{76})", "$1\n") + "\"", getClass());
+    assertSame(icon, same);
+    assertNull(IconLoader.findIcon("data:image/png;base64,AAAA", getClass()));
+  }
+
+  private byte[] readIcon() throws Exception {
+    InputStream stream = getClass().getResourceAsStream("/icons/print.png");
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = stream.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      stream.close();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.EmptyIcon;
+import com.bulenkov.iconloader.util.JBUI;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class EmptyIconTest extends TestCase {
+  public void testInterning() {
+    Icon icon = EmptyIcon.create(16, 24);
+    assertSame(icon, EmptyIcon.create(16, 24));
+    assertEquals(16, icon.getIconWidth());
+    assertEquals(24, icon.getIconHeight());
+    assertNotSame(icon, EmptyIcon.create(24, 16));
+    assertSame(EmptyIcon.create(16), EmptyIcon.create(16, 16));
+    assertSame(EmptyIcon.create(JBUI.scale(10), JBUI.scale(20)), EmptyIcon.createScaled(10, 20));
+
+    // out of the interned range, still equal
+    assertNotSame(EmptyIcon.create(200, 16), EmptyIcon.create(200, 16));
+    assertEquals(EmptyIcon.create(200, 16), EmptyIcon.create(200, 16));
+  }
+
+  public void testConcurrentCreateReturnsOneInstance() throws Exception {
+    final CyclicBarrier start = new CyclicBarrier(16);
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<Icon>> icons = new ArrayList<Future<Icon>>();
+      for (int i = 0; i < 16; i++) {
+        icons.add(pool.submit(new Callable<Icon>() {
+          @Override
+          public Icon call() throws Exception {
+            start.await();
+            return EmptyIcon.create(77, 33);
+          }
+        }));
+      }
+      Icon first = icons.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<Icon> icon : icons) {
+        assertSame(first, icon.get(10, TimeUnit.SECONDS));
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+}
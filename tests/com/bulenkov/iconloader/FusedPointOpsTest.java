@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.FusedPointOps;
+import com.bulenkov.iconloader.util.Scalr;
+import junit.framework.TestCase;
+
+import java.awt.image.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class FusedPointOpsTest extends TestCase {
+  private static final LookupOp INVERT = createInvert();
+
+  public void testSameAsSeparateOps() {
+    for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR}) {
+      BufferedImage image = createNoise(type);
+      BufferedImageOp[] ops = {Scalr.OP_DARKER, null, INVERT, new RescaleOp(new float[]{1.2f, 0.5f, 1f, 0.7f}, new float[4], null)};
+      if (type != BufferedImage.TYPE_INT_ARGB) ops[3] = Scalr.OP_BRIGHTER;
+      assertTrue(Arrays.equals(getPixels(apply(image, false, ops)), getPixels(apply(image, true, ops))));
+    }
+  }
+
+  public void testGrayscaleWithinOneLevel() {
+    BufferedImage image = createNoise(BufferedImage.TYPE_INT_ARGB);
+    int[] expected = getPixels(apply(image, false, Scalr.OP_DARKER, Scalr.OP_GRAYSCALE));
+    int[] actual = getPixels(apply(image, true, Scalr.OP_DARKER, Scalr.OP_GRAYSCALE));
+    for (int i = 0; i < expected.length; i++) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        int delta = Math.abs((expected[i] >>> shift & 0xFF) - (actual[i] >>> shift & 0xFF));
+        assertTrue(Integer.toHexString(expected[i]) + " != " + Integer.toHexString(actual[i]), delta <= 1);
+      }
+    }
+  }
+
+  private static BufferedImage apply(BufferedImage image, boolean fused, BufferedImageOp... ops) {
+    boolean enabled = FusedPointOps.isEnabled();
+    FusedPointOps.setEnabled(fused);
+    try {
+      return Scalr.apply(image, ops);
+    }
+    finally {
+      FusedPointOps.setEnabled(enabled);
+    }
+  }
+
+  private static BufferedImage createNoise(int type) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(64, 48, type);
+    Random random = new Random(type);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+    return image;
+  }
+
+  private static int[] getPixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  private static LookupOp createInvert() {
+    byte[] table = new byte[256];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (byte)(255 - i);
+    }
+    return new LookupOp(new ByteLookupTable(0, table), null);
+  }
+}
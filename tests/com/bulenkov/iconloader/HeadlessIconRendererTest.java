@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.RGBImageFilter;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class HeadlessIconRendererTest extends TestCase {
+  private final HeadlessIconRenderer myRenderer = new HeadlessIconRenderer(HeadlessIconRendererTest.class.getClassLoader());
+
+  @Override
+  protected void tearDown() throws Exception {
+    myRenderer.close();
+    super.tearDown();
+  }
+
+  public void testOriginalSize() throws Exception {
+    checkSize(myRenderer.render("/icons/print.png", 1f, false, null), 16);
+  }
+
+  public void testRetinaVariantScaledDown() throws Exception {
+    checkSize(myRenderer.render("/icons/print.png", 1.5f, true, null), 24);
+  }
+
+  public void testNoVariantsAvailable() throws Exception {
+    checkSize(myRenderer.render("/icons/printPreview.png", 2f, true, null), 32);
+  }
+
+  public void testFilter() throws Exception {
+    byte[] bytes = myRenderer.render("/icons/print.png", 1f, false, new RGBImageFilter() {
+      @Override
+      public int filterRGB(int x, int y, int rgb) {
+        return 0xFF00FF00;
+      }
+    });
+    assertEquals(0xFF00FF00, decode(bytes).getRGB(5, 5));
+  }
+
+  public void testBatch() throws Exception {
+    Map<String, byte[]> result = myRenderer.render(Arrays.asList("/icons/print.png", "/icons/missing.png", "/icons/printPreview.png"), 1f, true, null);
+    assertEquals(Arrays.asList("/icons/print.png", "/icons/missing.png", "/icons/printPreview.png"), Arrays.asList(result.keySet().toArray()));
+    checkSize(result.get("/icons/print.png"), 16);
+    assertNull(result.get("/icons/missing.png"));
+    checkSize(result.get("/icons/printPreview.png"), 16);
+  }
+
+  public void testCloseStopsOwnThreadsOnly() throws Exception {
+    HeadlessIconRenderer renderer = new HeadlessIconRenderer(getClass().getClassLoader());
+    renderer.render(Arrays.asList("/icons/print.png"), 1f, false, null);
+    renderer.close();
+    try {
+      renderer.render(Arrays.asList("/icons/print.png"), 1f, false, null);
+      fail("closed renderer must not accept batches");
+    }
+    catch (IllegalStateException ignore) {
+    }
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      renderer = new HeadlessIconRenderer(getClass().getClassLoader(), executor);
+      renderer.close();
+      assertFalse(executor.isShutdown());
+      checkSize(renderer.render(Arrays.asList("/icons/print.png"), 1f, false, null).get("/icons/print.png"), 16);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void checkSize(byte[] png, int size) throws Exception {
+    assertNotNull(png);
+    BufferedImage image = decode(png);
+    assertEquals(size, image.getWidth());
+    assertEquals(size, image.getHeight());
+  }
+
+  private static BufferedImage decode(byte[] png) throws Exception {
+    return ImageIO.read(new ByteArrayInputStream(png));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.EmptyIcon;
+import com.bulenkov.iconloader.util.IconBatchPainter;
+import com.bulenkov.iconloader.util.JBImageIcon;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class IconBatchPainterTest extends TestCase {
+  public void testPaintsLikeSeparateCalls() throws Exception {
+    Icon cached = new IconLoader.CachedImageIcon(getClass().getResource("/icons/print.png"));
+    Icon hidpi = new JBImageIcon(RetinaImage.createFrom(ImageIO.read(getClass().getResource("/icons/print@2x.png"))));
+    Icon square = new SquareIcon();
+
+    Icon[] icons = new Icon[20];
+    int[] xs = new int[icons.length];
+    int[] ys = new int[icons.length];
+    for (int i = 0; i < icons.length; i++) {
+      icons[i] = i % 4 == 0 ? cached : i % 4 == 1 ? hidpi : i % 4 == 2 ? square : null;
+      xs[i] = 3 + (i % 2) * 20;
+      ys[i] = i * 18;
+    }
+
+    BufferedImage separate = createTarget();
+    Graphics2D g = separate.createGraphics();
+    for (int i = 0; i < icons.length; i++) {
+      if (icons[i] != null) icons[i].paintIcon(null, g, xs[i], ys[i]);
+    }
+    g.dispose();
+
+    BufferedImage batched = createTarget();
+    g = batched.createGraphics();
+    assertEquals(15, IconBatchPainter.paintIcons(null, g, icons, xs, ys));
+    g.dispose();
+
+    assertTrue(Arrays.equals(getPixels(separate), getPixels(batched)));
+  }
+
+  public void testHiDPIImageWithoutDelegatePaintsLikePaintIcon() {
+    JBHiDPIScaledImage image = new JBHiDPIScaledImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = (Graphics2D)image.getGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(0, 0, 8, 8);
+    g.dispose();
+    Icon icon = new JBImageIcon(image);
+
+    BufferedImage separate = createTarget();
+    g = separate.createGraphics();
+    icon.paintIcon(null, g, 5, 7);
+    g.dispose();
+
+    BufferedImage batched = createTarget();
+    g = batched.createGraphics();
+    assertEquals(1, IconBatchPainter.paintIcons(null, g, new Icon[]{icon}, new int[]{5}, new int[]{7}));
+    g.dispose();
+
+    assertEquals(64, countPainted(separate));
+    assertTrue(Arrays.equals(getPixels(separate), getPixels(batched)));
+  }
+
+  public void testSkipsIconsOutsideClip() {
+    SquareIcon icon = new SquareIcon();
+    Icon[] icons = new Icon[100];
+    int[] xs = new int[icons.length];
+    int[] ys = new int[icons.length];
+    for (int i = 0; i < icons.length; i++) {
+      icons[i] = i % 2 == 0 ? icon : EmptyIcon.create(10);
+      ys[i] = i * 10;
+    }
+
+    BufferedImage target = createTarget();
+    Graphics2D g = target.createGraphics();
+    g.setClip(0, 95, 50, 100);
+    assertEquals(11, IconBatchPainter.paintIcons(null, g, icons, xs, ys));
+    g.dispose();
+    assertEquals(5, icon.myPaintCount);
+  }
+
+  private static BufferedImage createTarget() {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(50, 400, BufferedImage.TYPE_INT_ARGB);
+    return image;
+  }
+
+  private static int countPainted(BufferedImage image) {
+    int count = 0;
+    for (int pixel : getPixels(image)) {
+      if (pixel != 0) count++;
+    }
+    return count;
+  }
+
+  private static int[] getPixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  private static class SquareIcon implements Icon {
+    private int myPaintCount;
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+      myPaintCount++;
+      g.setColor(Color.RED);
+      g.fillRect(x + 2, y + 2, 6, 6);
+    }
+
+    @Override
+    public int getIconWidth() {
+      return 10;
+    }
+
+    @Override
+    public int getIconHeight() {
+      return 10;
+    }
+  }
+}
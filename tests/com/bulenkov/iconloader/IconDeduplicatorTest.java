@@ -0,0 +1,65 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.IconDeduplicator;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class IconDeduplicatorTest extends TestCase {
+  private boolean myWasEnabled;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myWasEnabled = IconDeduplicator.isEnabled();
+    IconDeduplicator.setEnabled(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    IconDeduplicator.setEnabled(myWasEnabled);
+    super.tearDown();
+  }
+
+  public void testIdenticalIconsShareRasterAndDisabledIcon() throws Exception {
+    IconLoaderStats stats = IconLoaderStats.getInstance();
+    long hits = stats.getDedupHits();
+
+    // not the cached ones, they may have been loaded by other tests before deduplication was enabled
+    Icon print = new IconLoader.CachedImageIcon(getClass().getResource("/icons/print.png"));
+    Icon copy = new IconLoader.CachedImageIcon(getClass().getResource("/icons/printCopy.png"));
+    Icon preview = new IconLoader.CachedImageIcon(getClass().getResource("/icons/printPreview.png"));
+
+    assertSame(IconLoader.getIconSnapshot(print), IconLoader.getIconSnapshot(copy));
+    assertNotSame(IconLoader.getIconSnapshot(print), IconLoader.getIconSnapshot(preview));
+    assertSame(IconLoader.getDisabledIcon(print), IconLoader.getDisabledIcon(copy));
+    assertTrue(stats.getDedupHits() > hits);
+    assertTrue(stats.getDedupRatio() > 0);
+  }
+
+  public void testDisabledLeavesIconsUnshared() throws Exception {
+    IconDeduplicator.setEnabled(false);
+    Icon print = new IconLoader.CachedImageIcon(getClass().getResource("/icons/print.png"));
+    Icon copy = new IconLoader.CachedImageIcon(getClass().getResource("/icons/printCopy.png"));
+    assertNotSame(IconLoader.getIconSnapshot(print), IconLoader.getIconSnapshot(copy));
+  }
+}
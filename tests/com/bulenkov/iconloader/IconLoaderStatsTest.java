@@ -0,0 +1,86 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.IconLoaderStats.Counter;
+import com.bulenkov.iconloader.IconLoaderStats.Phase;
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class IconLoaderStatsTest extends TestCase {
+  private final IconLoaderStats myStats = IconLoaderStats.getInstance();
+
+  public void testCounters() {
+    long misses = myStats.getIconCacheMisses();
+    long bytes = myStats.getBytesRead();
+    IconLoaderStats.increment(Counter.ICON_CACHE_MISS);
+    IconLoaderStats.increment(Counter.ICON_CACHE_MISS);
+    IconLoaderStats.add(Counter.BYTES_READ, 1000);
+
+    assertEquals(misses + 2, myStats.getIconCacheMisses());
+    assertEquals(misses + 2, myStats.get(Counter.ICON_CACHE_MISS));
+    assertEquals(bytes + 1000, myStats.getBytesRead());
+  }
+
+  public void testHistogramBuckets() {
+    long[] bounds = myStats.getLatencyHistogramBounds();
+    assertEquals(1, bounds[0]);
+    assertEquals(1024, bounds[10]);
+    assertEquals(Long.MAX_VALUE, bounds[bounds.length - 1]);
+
+    long[] before = myStats.getScaleLatencyHistogram();
+    // 600us falls into [512, 1024)
+    IconLoaderStats.record(Phase.SCALE, System.nanoTime() - TimeUnit.MICROSECONDS.toNanos(600));
+    IconLoaderStats.record(Phase.SCALE, System.nanoTime() - TimeUnit.SECONDS.toNanos(10));
+    long[] after = myStats.getScaleLatencyHistogram();
+
+    assertEquals(bounds.length, after.length);
+    for (int i = 0; i < after.length; i++) {
+      long expected = i == 10 || i == after.length - 1 ? 1 : 0;
+      assertEquals("bucket " + i, expected, after[i] - before[i]);
+    }
+  }
+
+  public void testReset() {
+    IconLoaderStats.increment(Counter.EVICTION);
+    IconLoaderStats.record(Phase.FILTER, System.nanoTime());
+    myStats.reset();
+
+    assertEquals(0, myStats.getEvictions());
+    for (long bucket : myStats.getFilterLatencyHistogram()) {
+      assertEquals(0, bucket);
+    }
+  }
+
+  public void testRegister() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.bulenkov.iconloader:type=IconLoaderStats");
+    assertTrue(IconLoaderStats.register());
+    assertTrue(IconLoaderStats.register());
+    assertTrue(server.isRegistered(name));
+
+    IconLoaderStats.increment(Counter.DEDUP_HIT);
+    assertEquals(myStats.getDedupHits(), server.getAttribute(name, "DedupHits"));
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.Pair;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class IconPathPatcherTest extends TestCase {
+  public void testLookup() throws Exception {
+    IconPathTable table = IconPathTable.compile(Arrays.asList(
+      patcher("/icons/", "/theme/"),
+      patcher("/icons/actions/", "/theme/actions"),
+      patcher("/icons/actions/run.png", "/special/run.png"),
+      patcher("/icons/general/add.png", "/first/add.png"),
+      patcher("/icons/general/add.png", "/second/add.png")), 1);
+
+    assertEquals("/special/run.png", lookup(table, "/icons/actions/run.png"));
+    assertEquals("/theme/actions/stop.png", lookup(table, "/icons/actions/stop.png"));
+    assertEquals("/theme/general/remove.png", lookup(table, "/icons/general/remove.png"));
+    assertEquals("/second/add.png", lookup(table, "/icons/general/add.png"));
+    assertNull(lookup(table, "/other/icons/run.png"));
+    assertNull(lookup(table, "/icons"));
+  }
+
+  public void testOnlyAffectedIconsAreReloaded() throws Exception {
+    Icon print = IconLoader.findIcon("/icons/print.png", getClass());
+    Icon preview = IconLoader.findIcon("/icons/printPreview.png", getClass());
+    assertNotNull(print);
+    assertNotNull(preview);
+    Icon previewImage = IconLoader.getIconSnapshot(preview);
+
+    IconPathPatcher patcher = patcher("/icons/print.png", "/icons/printPreview.png");
+    IconLoader.installPathPatcher(patcher);
+    try {
+      print.getIconWidth();
+      assertTrue(print.toString().endsWith("/icons/printPreview.png"));
+      assertSame(previewImage, IconLoader.getIconSnapshot(preview));
+    }
+    finally {
+      IconLoader.removePathPatcher(patcher);
+    }
+    print.getIconWidth();
+    assertTrue(print.toString().endsWith("/icons/print.png"));
+  }
+
+  public void testPatchedIconStaysCachedUnderItsUrl() throws Exception {
+    Icon print = IconLoader.findIcon("/icons/print.png", getClass());
+    assertNotNull(print);
+    int generation = IconLoader.getGeneration();
+
+    IconPathPatcher patcher = patcher("/icons/print.png", "/icons/printPreview.png");
+    IconLoader.installPathPatcher(patcher);
+    try {
+      assertEquals(generation, IconLoader.getGeneration());
+      assertSame(print, IconLoader.findIcon("/icons/print.png", getClass()));
+      print.getIconWidth();
+      assertSame(print, IconLoader.findIcon(getClass().getResource("/icons/print.png")));
+      assertEquals("/icons/print.png", ((IconLoader.CachedImageIcon)print).myOriginalPath);
+    }
+    finally {
+      IconLoader.removePathPatcher(patcher);
+    }
+    assertEquals(generation, IconLoader.getGeneration());
+  }
+
+  private static String lookup(IconPathTable table, String path) {
+    Pair<String, IconPathPatcher> patched = table.lookup(path);
+    return patched == null ? null : patched.first;
+  }
+
+  private static IconPathPatcher patcher(String from, String to) {
+    final Map<String, String> mappings = new HashMap<String, String>(Collections.singletonMap(from, to));
+    return new IconPathPatcher() {
+      @Override
+      public Map<String, String> getPathMappings() {
+        return mappings;
+      }
+    };
+  }
+}
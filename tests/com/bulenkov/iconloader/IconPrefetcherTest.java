@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class IconPrefetcherTest extends TestCase {
+  public void testRecordAndReplay() throws Exception {
+    File file = File.createTempFile("icons", ".prefetch");
+    try {
+      URL print = getClass().getResource("/icons/print.png");
+      URL preview = getClass().getResource("/icons/printPreview.png");
+
+      // icons that are realized from scratch, regardless of what other tests have loaded
+      IconPrefetcher.startRecording(file, TimeUnit.MINUTES.toMillis(1));
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(print));
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(preview));
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(print));
+      IconPrefetcher.stopRecording(file);
+      // loaded after the recording has stopped
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(getClass().getResource("/icons/printCopy.png")));
+
+      List<String> lines = readLines(file);
+      assertEquals(3, lines.size());
+      assertEquals(print.toExternalForm(), lines.get(1));
+      assertEquals(preview.toExternalForm(), lines.get(2));
+
+      long prefetched = IconLoaderStats.getInstance().getPrefetchedIcons();
+      assertEquals(2, IconPrefetcher.replay(file));
+      assertTrue(IconPrefetcher.awaitReplay(10, TimeUnit.SECONDS));
+      assertEquals(prefetched + 2, IconLoaderStats.getInstance().getPrefetchedIcons());
+    }
+    finally {
+      assertTrue(file.delete());
+    }
+  }
+
+  public void testUnusedPrefetchedIconDropsOut() throws Exception {
+    File dir = File.createTempFile("prefetch", "");
+    assertTrue(dir.delete() && dir.mkdirs());
+    File file = new File(dir, "icons.prefetch");
+    try {
+      // icons no other test has loaded
+      URL used = createIcon(new File(dir, "used.png"));
+      URL unused = createIcon(new File(dir, "unused.png"));
+      IconPrefetcher.startRecording(file, TimeUnit.MINUTES.toMillis(1));
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(used));
+      IconLoader.getIconSnapshot(new IconLoader.CachedImageIcon(unused));
+      IconPrefetcher.stopRecording(file);
+      assertEquals(3, readLines(file).size());
+
+      // the next session uses only one of the prefetched icons
+      IconPrefetcher.start(file);
+      assertTrue(IconPrefetcher.awaitReplay(10, TimeUnit.SECONDS));
+      Icon icon = IconLoader.findIcon(used);
+      assertNotNull(icon);
+      icon.getIconWidth();
+      IconPrefetcher.stopRecording(file);
+
+      List<String> lines = readLines(file);
+      assertEquals(2, lines.size());
+      assertEquals(used.toExternalForm(), lines.get(1));
+    }
+    finally {
+      for (File child : dir.listFiles()) {
+        assertTrue(child.delete());
+      }
+      assertTrue(dir.delete());
+    }
+  }
+
+  public void testMissingFileIsIgnored() {
+    assertEquals(0, IconPrefetcher.replay(new File("missing.prefetch")));
+  }
+
+  private static URL createIcon(File file) throws Exception {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+    ImageIO.write(image, "png", file);
+    return file.toURI().toURL();
+  }
+
+  private static List<String> readLines(File file) throws Exception {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.EmptyIcon;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class LazyIconTest extends TestCase {
+  public void testComputedOncePerState() throws Exception {
+    final AtomicInteger computations = new AtomicInteger();
+    final IconLoader.LazyIcon icon = new IconLoader.LazyIcon() {
+      @Override
+      protected Icon compute() {
+        computations.incrementAndGet();
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException ignore) {
+        }
+        return EmptyIcon.create(16, 12);
+      }
+    };
+
+    final CyclicBarrier start = new CyclicBarrier(32);
+    ExecutorService pool = Executors.newFixedThreadPool(32);
+    try {
+      List<Future<Integer>> widths = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 32; i++) {
+        widths.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            start.await();
+            return icon.getIconWidth();
+          }
+        }));
+      }
+      for (Future<Integer> width : widths) {
+        assertEquals(16, width.get(10, TimeUnit.SECONDS).intValue());
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    assertEquals(1, computations.get());
+    assertEquals(12, icon.getIconHeight());
+    assertEquals(1, computations.get());
+
+    IconPathPatcher patcher = new IconPathPatcher() {
+      @Override
+      public Map<String, String> getPathMappings() {
+        return Collections.emptyMap();
+      }
+    };
+    IconLoader.installPathPatcher(patcher);
+    try {
+      icon.getIconWidth();
+      icon.getIconWidth();
+      assertEquals(2, computations.get());
+    }
+    finally {
+      IconLoader.removePathPatcher(patcher);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the library with a class loader hiding {@code jdk.jfr}, like a runtime without the module.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class NoFlightRecorderTest extends TestCase {
+  public void testIconsLoadWithoutFlightRecorder() throws Exception {
+    ClassLoader loader = new NoFlightRecorderClassLoader();
+    URL url = getClass().getResource("/icons/print.png");
+
+    Class<?> imageLoader = loader.loadClass("com.bulenkov.iconloader.util.ImageLoader");
+    Object image = imageLoader.getMethod("loadFromUrl", URL.class, boolean.class, boolean.class).invoke(null, url, false, false);
+    assertNotNull(image);
+
+    Class<?> iconLoader = loader.loadClass("com.bulenkov.iconloader.IconLoader");
+    Icon icon = (Icon)iconLoader.getMethod("findIcon", URL.class).invoke(null, url);
+    assertEquals(16, icon.getIconWidth());
+    assertNotNull(iconLoader.getMethod("getDisabledIcon", Icon.class).invoke(null, icon));
+
+    Class<?> scalr = loader.loadClass("com.bulenkov.iconloader.util.Scalr");
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage source = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage scaled = (BufferedImage)scalr.getMethod("resize", BufferedImage.class, int.class, BufferedImageOp[].class)
+      .invoke(null, source, 16, new BufferedImageOp[0]);
+    assertEquals(16, scaled.getWidth());
+  }
+
+  private static class NoFlightRecorderClassLoader extends URLClassLoader {
+    private NoFlightRecorderClassLoader() throws Exception {
+      super(getClassPath(), null);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("jdk.jfr.")) throw new ClassNotFoundException(name);
+      return super.loadClass(name, resolve);
+    }
+
+    private static URL[] getClassPath() throws Exception {
+      List<URL> urls = new ArrayList<URL>();
+      for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+        urls.add(new File(path).toURI().toURL());
+      }
+      return urls.toArray(new URL[urls.size()]);
+    }
+  }
+}
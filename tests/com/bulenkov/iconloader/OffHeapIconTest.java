@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.IconDeduplicator;
+import com.bulenkov.iconloader.util.JBImageIcon;
+import com.bulenkov.iconloader.util.OffHeapArena;
+import com.bulenkov.iconloader.util.OffHeapIcon;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class OffHeapIconTest extends TestCase {
+  public void testPaintsLikeHeapIcon() throws Exception {
+    ImageIcon heap = new JBImageIcon(RetinaImage.createFrom(ImageIO.read(getClass().getResource("/icons/print@2x.png"))));
+    OffHeapIcon offHeap = OffHeapIcon.create(heap);
+    assertNotNull(offHeap);
+    assertFalse(offHeap.isHot());
+    assertEquals(heap.getIconWidth(), offHeap.getIconWidth());
+    assertEquals(heap.getIconHeight(), offHeap.getIconHeight());
+    assertTrue(Arrays.equals(paint(heap), paint(offHeap)));
+    assertTrue(offHeap.isHot());
+  }
+
+  public void testReleasedWithOwner() throws Exception {
+    releaseGarbage();
+    long used = OffHeapArena.getUsedBytes();
+    OffHeapIcon icon = OffHeapIcon.create(new JBImageIcon(ImageIO.read(getClass().getResource("/icons/print.png"))));
+    assertNotNull(icon);
+    assertEquals(used + 4 * 16 * 16, OffHeapArena.getUsedBytes());
+
+    //noinspection UnusedAssignment
+    icon = null;
+    for (int i = 0; i < 50 && OffHeapArena.getUsedBytes() > used; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(used, OffHeapArena.getUsedBytes());
+  }
+
+  public void testReleasedRangesAreReused() throws Exception {
+    int size = 16 * 1024;
+    releaseGarbage();
+    Object keep = new Object();
+    OffHeapArena.allocateInts(keep, size);
+    long used = OffHeapArena.getUsedBytes();
+    Object[] owners = new Object[15];
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = new Object();
+      OffHeapArena.allocateInts(owners[i], size);
+    }
+    long reserved = OffHeapArena.getReservedBytes();
+
+    // every slab stays reserved by the kept allocation
+    Arrays.fill(owners, null);
+    for (int i = 0; i < 50 && OffHeapArena.getUsedBytes() > used; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(used, OffHeapArena.getUsedBytes());
+
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = new Object();
+      OffHeapArena.allocateInts(owners[i], size);
+    }
+    assertEquals(reserved, OffHeapArena.getReservedBytes());
+    assertNotNull(keep);
+  }
+
+  public void testDeduplicatedWithoutMaterializing() throws Exception {
+    boolean wasEnabled = IconDeduplicator.isEnabled();
+    IconDeduplicator.setEnabled(true);
+    try {
+      OffHeapIcon print = OffHeapIcon.create(new JBImageIcon(ImageIO.read(getClass().getResource("/icons/print.png"))));
+      OffHeapIcon copy = OffHeapIcon.create(new JBImageIcon(ImageIO.read(getClass().getResource("/icons/printCopy.png"))));
+      assertNotNull(print);
+      assertNotNull(copy);
+      assertSame(print, IconDeduplicator.intern(print));
+      assertSame(print, IconDeduplicator.intern(copy));
+      assertFalse(print.isHot());
+      assertFalse(copy.isHot());
+    }
+    finally {
+      IconDeduplicator.setEnabled(wasEnabled);
+    }
+  }
+
+  /**
+   * Releases allocations of owners collected before the test, so they don't disturb its counts.
+   */
+  private static void releaseGarbage() throws InterruptedException {
+    long used = -1;
+    for (int i = 0; i < 50 && OffHeapArena.getUsedBytes() != used; i++) {
+      used = OffHeapArena.getUsedBytes();
+      System.gc();
+      Thread.sleep(20);
+    }
+  }
+
+  private static int[] paint(Icon icon) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage target = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = target.createGraphics();
+    icon.paintIcon(null, g, 0, 0);
+    g.dispose();
+    return target.getRGB(0, 0, target.getWidth(), target.getHeight(), null, 0, target.getWidth());
+  }
+}
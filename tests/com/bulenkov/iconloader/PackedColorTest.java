@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ColorUtil;
+import com.bulenkov.iconloader.util.PackedColor;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class PackedColorTest extends TestCase {
+  public void testMatchesColorUtil() {
+    Random random = new Random(3);
+    for (int i = 0; i < 1000; i++) {
+      Color color = new Color(random.nextInt(), true);
+      int argb = color.getRGB();
+      double d = random.nextDouble() * 2;
+
+      Color shifted = new Color(clamp((int)(color.getRed() * d)), clamp((int)(color.getGreen() * d)), clamp((int)(color.getBlue() * d)), color.getAlpha());
+      assertEquals(shifted.getRGB(), PackedColor.shift(argb, d));
+      assertEquals(shifted, ColorUtil.shift(color, d));
+      assertEquals(new Color(color.getRed(), color.getGreen(), color.getBlue(), 77), ColorUtil.toAlpha(color, 77));
+      assertEquals((1 - (0.299 * color.getRed() + 0.587 * color.getGreen() + 0.114 * color.getBlue()) / 255) >= 0.5,
+                   PackedColor.isDark(argb));
+    }
+  }
+
+  public void testFromHex() {
+    assertEquals(0xFFAABB11, PackedColor.fromHex("#ab1"));
+    assertEquals(0xFFABC123, PackedColor.fromHex("abc123"));
+    assertEquals(new Color(0xFFFFFF), ColorUtil.fromHex("#FFF"));
+    assertEquals(Color.RED, ColorUtil.fromHex("#12345", Color.RED));
+    assertEquals(Color.RED, ColorUtil.fromHex("#12345g", Color.RED));
+  }
+
+  public void testBlendAndLuminance() {
+    assertEquals(0x80000000, PackedColor.blend(0x80000000, 0xFFFFFFFF, 0));
+    assertEquals(0xFFFFFFFF, PackedColor.blend(0x80000000, 0xFFFFFFFF, 1));
+    assertEquals(0xBF7F7F7F, PackedColor.blend(0x80000000, 0xFFFFFFFF, 0.5));
+    assertEquals(255, PackedColor.luminance(0xFFFFFFFF));
+    assertEquals(0, PackedColor.luminance(0xFF000000));
+  }
+
+  public void testBulkOperationsMatchSinglePixel() {
+    Random random = new Random(5);
+    int[] pixels = new int[64];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    int[] copy = pixels.clone();
+
+    PackedColor.shift(copy, 8, 32, 1.3);
+    PackedColor.blend(copy, 8, 32, 0xFF336699, 0.25);
+    PackedColor.toGray(copy, 8, 32);
+    PackedColor.scaleAlpha(copy, 8, 32, 0.5f);
+    for (int i = 0; i < pixels.length; i++) {
+      if (i < 8 || i >= 40) {
+        assertEquals(pixels[i], copy[i]);
+        continue;
+      }
+      int argb = PackedColor.shift(pixels[i], 1.3);
+      argb = PackedColor.withAlpha(PackedColor.blend(argb, 0xFF336699, 0.25), PackedColor.alpha(argb));
+      int gray = PackedColor.luminance(argb);
+      argb = PackedColor.pack(PackedColor.alpha(argb) / 2, gray, gray, gray);
+      assertEquals(argb, copy[i]);
+    }
+  }
+
+  private static int clamp(int component) {
+    return Math.max(0, Math.min(255, component));
+  }
+}
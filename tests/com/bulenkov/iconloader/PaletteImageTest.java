@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ImageUtil;
+import com.bulenkov.iconloader.util.JBImageIcon;
+import com.bulenkov.iconloader.util.PaletteImage;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class PaletteImageTest extends TestCase {
+  public void testLossless() throws Exception {
+    for (String name : new String[]{"print.png", "print@2x.png", "printPreview.png"}) {
+      BufferedImage source = ImageIO.read(getClass().getResource("/icons/" + name));
+      Image compact = PaletteImage.compact(source);
+      assertNotNull(name, compact);
+      assertTrue(PaletteImage.isCompact(compact));
+      assertEquals(paint(source), paint(compact));
+    }
+  }
+
+  public void testHiDPI() throws Exception {
+    BufferedImage source = ImageIO.read(getClass().getResource("/icons/print@2x.png"));
+    Image hidpi = RetinaImage.createFrom(source);
+    Image compact = PaletteImage.compact(hidpi);
+    assertNotNull(compact);
+    assertTrue(compact instanceof JBHiDPIScaledImage);
+    assertEquals(hidpi.getWidth(null), compact.getWidth(null));
+    assertEquals(source.getWidth(), ImageUtil.getRealWidth(compact));
+    assertEquals(paint(source), paint(((JBHiDPIScaledImage)compact).getDelegate()));
+    assertTrue(((DataBufferByte)((BufferedImage)compact).getRaster().getDataBuffer()).getData().length < 64);
+  }
+
+  public void testTooManyColors() throws Exception {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+    for (int i = 0; i < 400; i++) {
+      image.setRGB(i % 20, i / 20, 0xFF000000 | i);
+    }
+    assertNull(PaletteImage.compact(image));
+  }
+
+  private static String paint(Image image) {
+    int width = image.getWidth(null);
+    int height = image.getHeight(null);
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = target.createGraphics();
+    g.setColor(Color.ORANGE);
+    g.fillRect(0, 0, width, height);
+    new JBImageIcon(image).paintIcon(null, g, 0, 0);
+    g.dispose();
+    StringBuilder result = new StringBuilder();
+    for (int rgb : target.getRGB(0, 0, width, height, null, 0, width)) {
+      result.append(Integer.toHexString(rgb)).append(' ');
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ConcurrentWeakValueHashMap;
+import com.bulenkov.iconloader.util.ReferenceReclaimer;
+import junit.framework.TestCase;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class ReferenceReclaimerTest extends TestCase {
+  public void testClearedValuesAreReclaimedInBackground() throws Exception {
+    boolean enabled = ReferenceReclaimer.isEnabled();
+    ReferenceReclaimer.setEnabled(true);
+    try {
+      ConcurrentWeakValueHashMap<Integer, Object> map = new ConcurrentWeakValueHashMap<Integer, Object>();
+      Object kept = new Object();
+      map.put(-1, kept);
+      for (int i = 0; i < 1000; i++) {
+        map.put(i, new Object());
+      }
+      // keySet() is the raw key view, it doesn't drain anything itself
+      for (int i = 0; i < 50 && map.keySet().size() > 1; i++) {
+        System.gc();
+        Thread.sleep(20);
+      }
+      assertEquals(1, map.keySet().size());
+      assertSame(kept, map.get(-1));
+    }
+    finally {
+      ReferenceReclaimer.setEnabled(enabled);
+    }
+  }
+
+  public void testViewsAreLiveAndSkipClearedValues() throws Exception {
+    ConcurrentWeakValueHashMap<String, String> map = new ConcurrentWeakValueHashMap<String, String>();
+    String a = "a";
+    String b = "b";
+    map.put("a", a);
+    map.put("b", b);
+    map.put("garbage", new String("garbage"));
+    Collection<String> values = map.values();
+    Set<Map.Entry<String, String>> entries = map.entrySet();
+
+    for (int i = 0; i < 50 && map.get("garbage") != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(2, count(values.iterator()));
+    assertEquals(2, count(entries.iterator()));
+
+    String c = "c";
+    map.put("c", c);
+    assertTrue(values.contains(c));
+    assertEquals(3, count(entries.iterator()));
+
+    for (Iterator<Map.Entry<String, String>> iterator = entries.iterator(); iterator.hasNext(); ) {
+      if (iterator.next().getKey().equals("a")) {
+        assertTrue(iterator.hasNext());
+        iterator.remove();
+      }
+    }
+    assertNull(map.get("a"));
+    assertSame(b, map.get("b"));
+    assertEquals(2, count(values.iterator()));
+  }
+
+  private static int count(Iterator<?> iterator) {
+    int count = 0;
+    while (iterator.hasNext()) {
+      assertNotNull(iterator.next());
+      count++;
+    }
+    return count;
+  }
+}
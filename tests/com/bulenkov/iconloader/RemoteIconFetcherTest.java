@@ -0,0 +1,298 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.HttpIconDiskCache;
+import com.bulenkov.iconloader.util.ImageLoader;
+import com.bulenkov.iconloader.util.RemoteIconFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class RemoteIconFetcherTest extends TestCase {
+  private HttpServer myServer;
+  private final ConcurrentMap<String, AtomicInteger> myRequests = new ConcurrentHashMap<String, AtomicInteger>();
+  private final AtomicInteger myActive = new AtomicInteger();
+  private final AtomicInteger myMaxActive = new AtomicInteger();
+  private final AtomicInteger myNotModified = new AtomicInteger();
+  private volatile CountDownLatch myRelease = new CountDownLatch(0);
+  private volatile String myUserAgent;
+  private byte[] myIcon;
+  private File myCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myIcon = readIcon();
+    myServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    myServer.setExecutor(Executors.newCachedThreadPool());
+    myServer.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        myUserAgent = exchange.getRequestHeaders().getFirst("User-Agent");
+        myRequests.putIfAbsent(path, new AtomicInteger());
+        myRequests.get(path).incrementAndGet();
+        int active = myActive.incrementAndGet();
+        while (true) {
+          int max = myMaxActive.get();
+          if (active <= max || myMaxActive.compareAndSet(max, active)) break;
+        }
+        try {
+          myRelease.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ignore) {
+        }
+        finally {
+          myActive.decrementAndGet();
+        }
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          myNotModified.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+          exchange.close();
+          return;
+        }
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        exchange.sendResponseHeaders(200, myIcon.length);
+        OutputStream body = exchange.getResponseBody();
+        body.write(myIcon);
+        body.close();
+      }
+    });
+    myServer.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myRelease.countDown();
+    myServer.stop(0);
+    ((ExecutorService)myServer.getExecutor()).shutdownNow();
+    if (myCacheDir != null) {
+      new HttpIconDiskCache(myCacheDir, 0).clear();
+      myCacheDir.delete();
+    }
+    super.tearDown();
+  }
+
+  public void testConcurrentRequestsShareOneDownload() throws Exception {
+    myRelease = new CountDownLatch(1);
+    RemoteIconFetcher fetcher = new RemoteIconFetcher(4, 5000, 5000);
+    URL url = url("/avatar.png");
+    List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+    for (int i = 0; i < 50; i++) {
+      futures.add(fetcher.fetch(url));
+    }
+    myRelease.countDown();
+    for (Future<byte[]> future : futures) {
+      assertEquals(myIcon.length, future.get(10, TimeUnit.SECONDS).length);
+    }
+    assertEquals(1, myRequests.get("/avatar.png").get());
+    assertEquals(1, fetcher.getDownloadCount());
+    assertEquals("IconLoader", myUserAgent);
+  }
+
+  public void testToolbarOfRemoteIconsFetchesEachUrlOnce() throws Exception {
+    final URL[] urls = new URL[5];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = url("/toolbar/avatar" + i + ".png");
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(50);
+    try {
+      List<Future<Image>> images = new ArrayList<Future<Image>>();
+      for (int i = 0; i < 50; i++) {
+        final URL url = urls[i % urls.length];
+        images.add(pool.submit(new Callable<Image>() {
+          @Override
+          public Image call() {
+            return ImageLoader.loadFromUrl(url);
+          }
+        }));
+      }
+      for (Future<Image> image : images) {
+        assertEquals(16, image.get(10, TimeUnit.SECONDS).getWidth(null));
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    for (int i = 0; i < urls.length; i++) {
+      assertEquals(1, myRequests.get("/toolbar/avatar" + i + ".png").get());
+    }
+  }
+
+  public void testConnectionsPerHostAreLimited() throws Exception {
+    myRelease = new CountDownLatch(1);
+    RemoteIconFetcher fetcher = new RemoteIconFetcher(2, 5000, 5000);
+    List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(fetcher.fetch(url("/limited" + i + ".png")));
+    }
+    Thread.sleep(200);
+    assertEquals(2, myActive.get());
+    myRelease.countDown();
+    for (Future<byte[]> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(2, myMaxActive.get());
+  }
+
+  public void testReadTimeout() throws Exception {
+    myRelease = new CountDownLatch(1);
+    RemoteIconFetcher fetcher = new RemoteIconFetcher(2, 5000, 200);
+    try {
+      fetcher.fetch(url("/slow.png")).get(10, TimeUnit.SECONDS);
+      fail("Timeout expected");
+    }
+    catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof SocketTimeoutException);
+    }
+  }
+
+  public void testCancel() throws Exception {
+    myRelease = new CountDownLatch(1);
+    RemoteIconFetcher fetcher = new RemoteIconFetcher(2, 5000, 5000);
+    URL url = url("/cancelled.png");
+    Future<byte[]> first = fetcher.fetch(url);
+    Future<byte[]> second = fetcher.fetch(url);
+
+    assertTrue(first.cancel(true));
+    assertTrue(first.isCancelled());
+    assertFalse(second.isDone());
+    try {
+      first.get();
+      fail("Cancellation expected");
+    }
+    catch (CancellationException expected) {
+    }
+
+    // the last caller cancels the download itself, a new request starts a new one
+    assertTrue(second.cancel(true));
+    Future<byte[]> third = fetcher.fetch(url);
+    myRelease.countDown();
+    assertEquals(myIcon.length, third.get(10, TimeUnit.SECONDS).length);
+    assertTrue(third.isDone());
+  }
+
+  public void testDiskCacheRevalidatesAfterRestart() throws Exception {
+    URL url = url("/cached.png");
+    new RemoteIconFetcher(2, 5000, 5000, new HttpIconDiskCache(createCacheDir(), 1 << 20)).download(url);
+    assertEquals(0, myNotModified.get());
+
+    // a new fetcher over the same directory, like after a restart
+    byte[] bytes = new RemoteIconFetcher(2, 5000, 5000, new HttpIconDiskCache(myCacheDir, 1 << 20)).download(url);
+    assertTrue(Arrays.equals(myIcon, bytes));
+    assertEquals(2, myRequests.get("/cached.png").get());
+    assertEquals(1, myNotModified.get());
+  }
+
+  public void testDiskCacheServesStaleIconOffline() throws Exception {
+    URL url = url("/offline.png");
+    new RemoteIconFetcher(2, 5000, 5000, new HttpIconDiskCache(createCacheDir(), 1 << 20)).download(url);
+    myServer.stop(0);
+
+    byte[] bytes = new RemoteIconFetcher(2, 5000, 5000, new HttpIconDiskCache(myCacheDir, 1 << 20)).download(url);
+    assertTrue(Arrays.equals(myIcon, bytes));
+    try {
+      new RemoteIconFetcher(2, 5000, 5000).download(url);
+      fail("Server is down");
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  public void testDiskCacheEvictsLeastRecentlyUsed() throws Exception {
+    HttpIconDiskCache cache = new HttpIconDiskCache(createCacheDir(), 2 * (myIcon.length + 100));
+    cache.put("a", new HttpIconDiskCache.Entry(myIcon, null, null));
+    cache.put("b", new HttpIconDiskCache.Entry(myIcon, "\"b\"", null));
+    assertNotNull(cache.get("a"));
+    cache.put("c", new HttpIconDiskCache.Entry(myIcon, null, "Mon, 17 Oct 2016 10:00:00 GMT"));
+
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    HttpIconDiskCache.Entry c = cache.get("c");
+    assertNotNull(c);
+    assertNull(c.eTag);
+    assertEquals("Mon, 17 Oct 2016 10:00:00 GMT", c.lastModified);
+    assertTrue(cache.getSize() <= 2 * (myIcon.length + 100));
+    assertEquals(2, myCacheDir.list().length);
+  }
+
+  public void testDiskCacheDropsEntryWithCorruptedLength() throws Exception {
+    HttpIconDiskCache cache = new HttpIconDiskCache(createCacheDir(), 1 << 20);
+    cache.put("a", new HttpIconDiskCache.Entry(myIcon, null, null));
+    File[] files = myCacheDir.listFiles();
+    assertEquals(1, files.length);
+
+    // the length of the icon bytes, which end the entry
+    RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+    try {
+      file.seek(file.length() - myIcon.length - 4);
+      file.writeInt(Integer.MAX_VALUE);
+    }
+    finally {
+      file.close();
+    }
+    assertNull(cache.get("a"));
+    assertEquals(0, myCacheDir.list().length);
+  }
+
+  private File createCacheDir() throws IOException {
+    myCacheDir = File.createTempFile("icon-cache", "");
+    assertTrue(myCacheDir.delete() && myCacheDir.mkdirs());
+    return myCacheDir;
+  }
+
+  private URL url(String path) throws Exception {
+    return new URL("http://127.0.0.1:" + myServer.getAddress().getPort() + path);
+  }
+
+  private byte[] readIcon() throws IOException {
+    InputStream stream = getClass().getResourceAsStream("/icons/print.png");
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = stream.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      stream.close();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ImageLoader;
+import com.bulenkov.iconloader.util.SVGDocument;
+import com.bulenkov.iconloader.util.SVGLoader;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class SVGLoaderTest extends TestCase {
+  private static final URL VECTOR = SVGLoaderTest.class.getResource("/icons/vector.svg");
+
+  public void testRasterizedAtEveryScale() throws Exception {
+    for (float scale : new float[]{1f, 1.25f, 1.5f, 1.75f, 2f}) {
+      Image image = SVGLoader.load(VECTOR, scale);
+      int expected = (int)Math.ceil(16 * scale);
+      assertEquals(expected, image.getWidth(null));
+      assertEquals(expected, image.getHeight(null));
+    }
+  }
+
+  public void testRasterIsCachedPerScale() throws Exception {
+    assertSame(SVGLoader.load(VECTOR, 1.5f), SVGLoader.load(VECTOR, 1.5f));
+    assertNotSame(SVGLoader.load(VECTOR, 1.5f), SVGLoader.load(VECTOR, 2f));
+  }
+
+  public void testFillsAndGradients() throws Exception {
+    BufferedImage image = (BufferedImage)SVGLoader.load(VECTOR, 2f);
+    assertEquals(0xFF00FF00, image.getRGB(8, 24));
+    Color left = new Color(image.getRGB(0, 2), true);
+    Color right = new Color(image.getRGB(31, 2), true);
+    assertTrue(left.getRed() > 200 && left.getBlue() < 50);
+    assertTrue(right.getBlue() > 200 && right.getRed() < 50);
+    // inside the stroked circle nothing is painted, its outline is
+    assertEquals(0, image.getRGB(24, 24) >>> 24);
+    assertEquals(0xFF, image.getRGB(16, 24) >>> 24);
+  }
+
+  public void testArcs() throws Exception {
+    SVGDocument document = parse("<svg xmlns='http://www.w3.org/2000/svg' width='20' height='20'>" +
+                                 "<path d='M0,10A10,10,0,0,1,20,10' fill='black'/></svg>");
+    BufferedImage image = document.render(1f);
+    // the upper half of a circle centered at (10, 10)
+    assertEquals(0xFF, image.getRGB(10, 2) >>> 24);
+    assertEquals(0, image.getRGB(10, 15) >>> 24);
+    assertEquals(0, image.getRGB(1, 1) >>> 24);
+  }
+
+  public void testDarkVariant() throws Exception {
+    Image image = ImageLoader.loadSvgFromUrl(VECTOR, true, 1f, null);
+    assertNotNull(image);
+    assertEquals(0xFFFFFFFF, ((BufferedImage)image).getRGB(8, 8));
+  }
+
+  private static SVGDocument parse(String svg) throws Exception {
+    return SVGDocument.parse(new ByteArrayInputStream(svg.getBytes("UTF-8")));
+  }
+}
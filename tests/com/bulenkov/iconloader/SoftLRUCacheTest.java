@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.ScalableIcon;
+import com.bulenkov.iconloader.util.SoftLRUCache;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.lang.ref.WeakReference;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class SoftLRUCacheTest extends TestCase {
+  public void testRecentlyUsedValuesStayInHardCore() {
+    SoftLRUCache<String, Object> cache = new SoftLRUCache<String, Object>(2);
+    Object a = new Object();
+    Object b = new Object();
+    Object c = new Object();
+    cache.put("a", a);
+    cache.put("b", b);
+    assertSame(a, cache.get("a"));
+    cache.put("c", c);
+
+    // "b" is demoted to the soft tier, still reachable while the GC keeps it
+    assertEquals(2, cache.getHardSize());
+    assertEquals(3, cache.size());
+    assertSame(b, cache.get("b"));
+    assertEquals(2, cache.getHardSize());
+
+    cache.remove("b");
+    assertNull(cache.get("b"));
+    assertSame(a, cache.get("a"));
+    assertSame(c, cache.get("c"));
+
+    cache.clear();
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getHardSize());
+  }
+
+  public void testStripedCoreIsBounded() {
+    SoftLRUCache<Integer, Object> cache = new SoftLRUCache<Integer, Object>(128);
+    Object[] values = new Object[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new Object();
+      cache.put(i, values[i]);
+      assertSame(values[i], cache.get(i));
+    }
+    assertTrue(cache.getHardSize() <= 128);
+    assertTrue(cache.getHardSize() > 64);
+    assertSame(values[values.length - 1], cache.get(values.length - 1));
+  }
+
+  public void testScaledImagesDontKeepIconsReachable() throws Exception {
+    Icon icon = new IconLoader.CachedImageIcon(getClass().getResource("/icons/print.png"));
+    assertNotSame(icon, ((ScalableIcon)icon).scale(2f));
+    WeakReference<Icon> ref = new WeakReference<Icon>(icon);
+
+    //noinspection UnusedAssignment
+    icon = null;
+    for (int i = 0; i < 50 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(ref.get());
+  }
+
+  public void testScaledImagesAreDroppedWithIconCaches() throws Exception {
+    IconLoaderStats stats = IconLoaderStats.getInstance();
+    IconLoader.setUseDarkIcons(false);
+    ScalableIcon icon = new IconLoader.CachedImageIcon(getClass().getResource("/icons/printCopy.png"));
+    icon.scale(2f);
+    long misses = stats.getScaledIconCacheMisses();
+    icon.scale(2f);
+    assertEquals(misses, stats.getScaledIconCacheMisses());
+
+    // clears the icon caches without changing how icons look
+    IconLoader.setUseDarkIcons(false);
+    icon.scale(2f);
+    assertEquals(misses + 1, stats.getScaledIconCacheMisses());
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.JBImageIcon;
+import junit.framework.TestCase;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class TransparentIconTest extends TestCase {
+  @Override
+  protected void tearDown() throws Exception {
+    IconLoader.setPreblendTransparentIcons(false);
+    super.tearDown();
+  }
+
+  public void testPreblendedLooksTheSame() throws Exception {
+    Icon icon = IconLoader.findIcon("/icons/printPreview.png", getClass());
+    assertNotNull(icon);
+
+    IconLoader.setPreblendTransparentIcons(false);
+    int[] composited = paint(IconLoader.getTransparentIcon(icon, 0.4f));
+    IconLoader.setPreblendTransparentIcons(true);
+    int[] preblended = paint(IconLoader.getTransparentIcon(icon, 0.4f));
+    int[] again = paint(IconLoader.getTransparentIcon(icon, 0.4f));
+
+    for (int i = 0; i < composited.length; i++) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        // blending order may differ by a rounding step
+        assertTrue(Math.abs((composited[i] >> shift & 0xFF) - (preblended[i] >> shift & 0xFF)) <= 2);
+      }
+    }
+    assertTrue(Arrays.equals(preblended, again));
+  }
+
+  public void testPreblendedIconIsReleased() throws Exception {
+    IconLoader.setPreblendTransparentIcons(true);
+    @SuppressWarnings("UndesirableClassUsage")
+    Icon icon = new JBImageIcon(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+    paint(IconLoader.getTransparentIcon(icon, 0.4f));
+    WeakReference<Icon> ref = new WeakReference<Icon>(icon);
+
+    //noinspection UnusedAssignment
+    icon = null;
+    for (int i = 0; i < 50 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(ref.get());
+  }
+
+  private static int[] paint(Icon icon) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage target = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = target.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, target.getWidth(), target.getHeight());
+    icon.paintIcon(null, g, 0, 0);
+    g.dispose();
+    return target.getRGB(0, 0, target.getWidth(), target.getHeight(), null, 0, target.getWidth());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.JBImageIcon;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Paints a JTree of 10k rows with HiDPI icons and reports the bytes allocated per full pass,
+ * comparing the {@link JBImageIcon} paint path with the former Graphics-copy one.
+ * Run with {@code -Djava.awt.headless=true}.
+ *
+ * @author Konstantin Bulenkov
+ */
+public class TreePaintBenchmark {
+  private static final int ROWS = 10000;
+  private static final int VIEWPORT_HEIGHT = 600;
+  private static final int WARMUP = 5;
+  private static final int ITERATIONS = 20;
+
+  public static void main(String[] args) throws Exception {
+    final Image hidpi = RetinaImage.createFrom(createRaster(32, 32));
+
+    System.out.println("JBImageIcon:   " + measure(new JBImageIcon(hidpi)) + " bytes/pass");
+    System.out.println("Graphics copy: " + measure(new GraphicsCopyIcon(hidpi)) + " bytes/pass");
+  }
+
+  private static long measure(final Icon icon) {
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode("root");
+    for (int i = 0; i < ROWS; i++) {
+      root.add(new DefaultMutableTreeNode("node " + i));
+    }
+    JTree tree = new JTree(root);
+    DefaultTreeCellRenderer renderer = new DefaultTreeCellRenderer();
+    renderer.setLeafIcon(icon);
+    tree.setCellRenderer(renderer);
+    tree.setSize(tree.getPreferredSize());
+
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage target = new BufferedImage(tree.getWidth(), VIEWPORT_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    for (int i = 0; i < WARMUP; i++) {
+      paintAllRows(tree, target);
+    }
+
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long before = bean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) {
+      paintAllRows(tree, target);
+    }
+    return (bean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+  }
+
+  private static void paintAllRows(JTree tree, BufferedImage target) {
+    for (int offset = 0; offset < tree.getHeight(); offset += VIEWPORT_HEIGHT) {
+      Graphics2D g = target.createGraphics();
+      g.translate(0, -offset);
+      g.setClip(0, offset, tree.getWidth(), VIEWPORT_HEIGHT);
+      tree.paint(g);
+      g.dispose();
+    }
+  }
+
+  private static Image createRaster(int width, int height) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.BLUE);
+    g.fillOval(0, 0, width, height);
+    g.dispose();
+    return image;
+  }
+
+  /**
+   * The paint path used before: a Graphics copy per paint, scaled by 0.5.
+   */
+  private static class GraphicsCopyIcon extends ImageIcon {
+    private GraphicsCopyIcon(Image image) {
+      super(image);
+    }
+
+    @Override
+    public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+      Image image = getImage();
+      Graphics2D newG = (Graphics2D)g.create(x, y, image.getWidth(c), image.getHeight(c));
+      newG.scale(0.5, 0.5);
+      newG.drawImage(((JBHiDPIScaledImage)image).getDelegate(), 0, 0, c);
+      newG.dispose();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader;
+
+import com.bulenkov.iconloader.util.UIUtil;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class UIUtilTest extends TestCase {
+  public void testHiDPIImageOfOddSize() {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage raster = new BufferedImage(33, 31, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = raster.createGraphics();
+    g.setColor(Color.BLUE);
+    g.fillRect(0, 0, 33, 31);
+    g.dispose();
+    Image image = new JBHiDPIScaledImage(raster, 17, 16, BufferedImage.TYPE_INT_ARGB);
+
+    BufferedImage expected = createTarget();
+    g = expected.createGraphics();
+    Graphics2D copy = (Graphics2D)g.create(5, 5, 17, 16);
+    copy.scale(0.5, 0.5);
+    copy.drawImage(raster, 0, 0, null);
+    copy.dispose();
+    g.dispose();
+
+    BufferedImage actual = createTarget();
+    g = actual.createGraphics();
+    UIUtil.drawImage(g, image, 5, 5, null);
+    g.dispose();
+
+    assertTrue(Arrays.equals(getPixels(expected), getPixels(actual)));
+  }
+
+  private static BufferedImage createTarget() {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(30, 30, BufferedImage.TYPE_INT_ARGB);
+    return image;
+  }
+
+  private static int[] getPixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+}
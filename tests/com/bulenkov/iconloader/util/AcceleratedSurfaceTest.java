@@ -0,0 +1,284 @@
+/*
+ * Copyright 2000-2016 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bulenkov.iconloader.util;
+
+import com.bulenkov.iconloader.JBHiDPIScaledImage;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Konstantin Bulenkov
+ */
+public class AcceleratedSurfaceTest extends TestCase {
+  private final BufferedImage myTarget = createImage(Color.WHITE);
+  // surfaces reference their sources weakly
+  private final List<Image> mySources = new ArrayList<Image>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    AcceleratedSurface.setEnabled(true);
+    AcceleratedSurface.setScreenOnly(false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    AcceleratedSurface.setScreenOnly(true);
+    AcceleratedSurface.setEnabled(false);
+    super.tearDown();
+  }
+
+  public void testPromotedAfterThreshold() {
+    BufferedImage source = createImage(Color.RED);
+    AcceleratedSurface surface = new AcceleratedSurface(source);
+    for (int i = 1; i < 32; i++) {
+      assertFalse(paint(surface));
+    }
+    assertNull(surface.getVolatileImage());
+    assertTrue(paint(surface));
+    assertNotNull(surface.getVolatileImage());
+    assertEquals(1, AcceleratedSurface.getPromotedCount());
+    assertEquals(Color.RED.getRGB(), myTarget.getRGB(5, 5));
+  }
+
+  public void testColdestEvicted() {
+    List<AcceleratedSurface> promoted = new ArrayList<AcceleratedSurface>();
+    for (int i = 0; i < 256; i++) {
+      BufferedImage source = createImage(Color.BLUE);
+      mySources.add(source);
+      AcceleratedSurface surface = new AcceleratedSurface(source);
+      paint(surface, i == 0 ? 32 : 100);
+      promoted.add(surface);
+    }
+    assertEquals(256, AcceleratedSurface.getPromotedCount());
+
+    AcceleratedSurface hot = new AcceleratedSurface(createImage(Color.GREEN));
+    assertTrue(paint(hot, 64));
+    assertEquals(256, AcceleratedSurface.getPromotedCount());
+    assertNull(promoted.get(0).getVolatileImage());
+    for (int i = 1; i < promoted.size(); i++) {
+      assertNotNull(promoted.get(i).getVolatileImage());
+    }
+  }
+
+  public void testLoserRetriesAfterThreshold() {
+    for (int i = 0; i < 256; i++) {
+      BufferedImage source = createImage(Color.BLUE);
+      mySources.add(source);
+      paint(new AcceleratedSurface(source), 1000);
+    }
+    AcceleratedSurface cold = new AcceleratedSurface(createImage(Color.GREEN));
+    assertFalse(paint(cold, 32));
+    // a failed competition ages the promoted surfaces, so a retry on every paint would demote them quickly
+    assertFalse(paint(cold, 31));
+    assertNull(cold.getVolatileImage());
+  }
+
+  public void testLostContentsRestored() {
+    BufferedImage source = createImage(Color.RED);
+    AcceleratedSurface surface = new AcceleratedSurface(source);
+    assertTrue(paint(surface, 32));
+    // contents are lost e.g. on a display mode change, a software surface never loses them on its own
+    LossyImage image = new LossyImage(VolatileImage.IMAGE_RESTORED);
+    surface.setVolatileImage(image);
+
+    assertSame(image, surface.validate(getConfiguration(), source, 10, 10));
+    assertEquals(1, image.myValidateCount);
+    assertEquals(Color.RED.getRGB(), image.getSnapshot().getRGB(5, 5));
+  }
+
+  public void testIncompatibleSurfaceRecreated() {
+    BufferedImage source = createImage(Color.RED);
+    AcceleratedSurface surface = new AcceleratedSurface(source);
+    assertTrue(paint(surface, 32));
+    LossyImage lost = new LossyImage(VolatileImage.IMAGE_INCOMPATIBLE);
+    surface.setVolatileImage(lost);
+
+    VolatileImage image = surface.validate(getConfiguration(), source, 10, 10);
+    assertNotNull(image);
+    assertNotSame(lost, image);
+    assertSame(image, surface.getVolatileImage());
+    assertEquals(Color.RED.getRGB(), image.getSnapshot().getRGB(5, 5));
+    assertEquals(Color.BLACK.getRGB(), lost.getSnapshot().getRGB(5, 5));
+  }
+
+  public void testCollectedSourceDemoted() throws Exception {
+    AcceleratedSurface surface = new AcceleratedSurface(createImage(Color.RED));
+    assertTrue(paint(surface, 32));
+    assertEquals(1, AcceleratedSurface.getPromotedCount());
+
+    BufferedImage other = createImage(Color.GREEN);
+    for (int i = 0; i < 50 && !surface.isFor(null); i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertTrue(surface.isFor(null));
+    assertTrue(paint(new AcceleratedSurface(other), 32));
+    assertEquals(1, AcceleratedSurface.getPromotedCount());
+    assertNull(surface.getVolatileImage());
+  }
+
+  public void testPaintsLikeHeapImage() {
+    BufferedImage source = createImage(Color.RED);
+    Graphics2D g = source.createGraphics();
+    g.setColor(Color.YELLOW);
+    g.fillOval(1, 1, 7, 7);
+    g.dispose();
+
+    BufferedImage expected = createImage(Color.WHITE);
+    g = expected.createGraphics();
+    g.drawImage(source, 0, 0, null);
+    g.dispose();
+
+    assertTrue(paint(new AcceleratedSurface(source), 32));
+    assertTrue(Arrays.equals(getPixels(expected), getPixels(myTarget)));
+  }
+
+  public void testPaintsHiDPIImageWithoutDelegateLikeHeapImage() {
+    // its own raster, twice the logical size
+    JBHiDPIScaledImage source = new JBHiDPIScaledImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = (Graphics2D)source.getGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(0, 0, 8, 8);
+    g.setColor(Color.YELLOW);
+    g.fillRect(2, 2, 4, 4);
+    g.dispose();
+
+    BufferedImage expected = createImage(Color.WHITE);
+    g = expected.createGraphics();
+    UIUtil.drawImage(g, source, 0, 0, null);
+    g.dispose();
+    // covers the logical 4x4 bounds only
+    assertEquals(Color.RED.getRGB(), expected.getRGB(0, 0));
+    assertEquals(Color.WHITE.getRGB(), expected.getRGB(5, 5));
+
+    assertTrue(paint(new AcceleratedSurface(source), 32));
+    assertTrue(Arrays.equals(getPixels(expected), getPixels(myTarget)));
+  }
+
+  private boolean paint(AcceleratedSurface surface, int times) {
+    boolean painted = false;
+    for (int i = 0; i < times; i++) {
+      painted = paint(surface);
+    }
+    return painted;
+  }
+
+  private boolean paint(AcceleratedSurface surface) {
+    Graphics2D g = myTarget.createGraphics();
+    try {
+      return surface.paint(g, 0, 0, null);
+    }
+    finally {
+      g.dispose();
+    }
+  }
+
+  private static BufferedImage createImage(Color color) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(color);
+    g.fillRect(0, 0, 10, 10);
+    g.dispose();
+    return image;
+  }
+
+  private GraphicsConfiguration getConfiguration() {
+    Graphics2D g = myTarget.createGraphics();
+    try {
+      return g.getDeviceConfiguration();
+    }
+    finally {
+      g.dispose();
+    }
+  }
+
+  /**
+   * A surface reporting the given status once. It can't be drawn, only validated.
+   */
+  private static class LossyImage extends VolatileImage {
+    private final BufferedImage myImage = createImage(Color.BLACK);
+    private final int myStatus;
+    private int myValidateCount;
+
+    private LossyImage(int status) {
+      myStatus = status;
+    }
+
+    @Override
+    public BufferedImage getSnapshot() {
+      return myImage;
+    }
+
+    @Override
+    public int getWidth() {
+      return myImage.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return myImage.getHeight();
+    }
+
+    @Override
+    public Graphics2D createGraphics() {
+      return myImage.createGraphics();
+    }
+
+    @Override
+    public int validate(GraphicsConfiguration gc) {
+      return myValidateCount++ == 0 ? myStatus : IMAGE_OK;
+    }
+
+    @Override
+    public boolean contentsLost() {
+      return false;
+    }
+
+    @Override
+    public ImageCapabilities getCapabilities() {
+      return new ImageCapabilities(true);
+    }
+
+    @Override
+    public int getWidth(ImageObserver observer) {
+      return getWidth();
+    }
+
+    @Override
+    public int getHeight(ImageObserver observer) {
+      return getHeight();
+    }
+
+    @Override
+    public Object getProperty(String name, ImageObserver observer) {
+      return UndefinedProperty;
+    }
+  }
+
+  private static int[] getPixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+}